@@ -26,15 +26,32 @@ package dev;
 
 import static js.base.Tools.*;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipFile;
 
 import js.file.DirWalk;
 import js.file.Files;
@@ -45,12 +62,23 @@ import js.json.JSList;
 import js.json.JSMap;
 import js.parsing.RegExp;
 import js.webtools.ArchiveDevice;
-import js.webtools.FileArchiveDevice;
 import js.webtools.S3Archive;
 import js.webtools.gen.S3Params;
+import dev.archive.ChunkStore;
+import dev.archive.ContentHasher;
+import dev.archive.LocalArchiveDevice;
+import dev.archive.MultipartTransfer;
+import dev.archive.ParallelZipper;
+import dev.archive.RegistryIndex;
+import dev.archive.RegistrySnapshot;
+import dev.archive.RemoteStore;
+import dev.archive.TransferJournal;
+import dev.archive.VersionCache;
 import dev.gen.archive.ArchiveEntry;
 import dev.gen.archive.ArchiveRegistry;
+import dev.gen.archive.ChunkManifest;
 import dev.gen.archive.LocalRegistry;
+import dev.gen.archive.Transfer;
 import dev.gen.archive.Oper;
 import dev.gen.archive.LocalEntry;
 
@@ -125,6 +153,16 @@ import dev.gen.archive.LocalEntry;
  * 
  *    TODO: document these fields, e.g. "file_extensions", "offload"
  * 
+ *    "chunked" : true     (directories only) stores each version as a small manifest referring to
+ *                         content-defined chunks, so a new version only uploads the chunks that have changed
+ * 
+ *    "compression_level" : 9           (directories only) deflate level, 1..9, used when zipping; 0 stores
+ *                                      files without compression
+ * 
+ *    "store_extensions" : ["npz", ...]  (directories only) files with these extensions are stored in the zip
+ *                                      without compression; by default, common compressed formats (jpg, mp4,
+ *                                      zip, ...) are stored
+ * 
  * 
  * Pushing a new version of an object to the archive
  * ------------------------------------------------------------------------------------
@@ -166,6 +204,20 @@ import dev.gen.archive.LocalEntry;
  *   dev archive offload foo
  * 
  * 
+ * Updating only some objects, or deferring pulls
+ * ------------------------------------------------------------------------------------
+ * The objects updated can be restricted to those whose keys or paths match one or more glob patterns:
+ * 
+ *   dev archive update only "datasets/**,models/resnet*"
+ * 
+ * In lazy mode, objects needing to be pulled are left as they are (and reported as "deferred"); they are
+ * marked within the local registry as awaiting a fetch, and each can be pulled when it is actually needed
+ * (or by a subsequent update that isn't lazy):
+ * 
+ *   dev archive update lazy
+ *   dev archive fetch foo
+ * 
+ * 
  * </pre>
  * 
  */
@@ -186,8 +238,25 @@ public final class ArchiveOper extends AppOper {
     var hf = new HelpFormatter();
     hf.addItem("[ dir <path> ]", "project root directory");
     hf.addItem("[ mock_remote <path> ]", "directory simulating cloud archive device");
+    hf.addItem("[ mock_latency <ms> ]", "delay added to each cloud device operation (for testing)");
+    hf.addItem("[ threads <n> ]", "number of objects to push or pull concurrently (default 1)");
+    hf.addItem("[ incremental ]", "when pulling directories, only write files that have changed");
+    hf.addItem("[ part_size <MB> ]", "push objects larger than this as parts, transferred concurrently");
+    hf.addItem("[ part_threads <n> ]", "number of parts of an object to transfer concurrently (default 4)");
+    hf.addItem("[ mock_bandwidth <KB/s> ]", "transfer rate of each cloud device operation (for testing)");
+    hf.addItem("[ zip_threads <n> ]", "number of threads compressing zips, shared by all objects (default: number of cores)");
+    hf.addItem("[ listing_ttl <s> ]", "reuse cached listing of cloud objects if no older than this (default 300)");
+    hf.addItem("[ cache_limit <MB> ]", "size of machine-wide cache of pulled objects (default 0: disabled)");
+    hf.addItem("[ cache_dir <path> ]", "directory containing the cache (default ~/.dev_archive_cache)");
+    hf.addItem("[ backup_dir <path> ]", "directory to store backups of previous local versions within");
+    hf.addItem("[ only <glob,...> ]", "only update objects whose keys or paths match one of these patterns");
+    hf.addItem("[ lazy ]", "don't pull objects until they are fetched");
+    hf.addItem("[ backup_count <n> ]", "number of backups of each object's previous local versions (default 3)");
+    hf.addItem("[ backup_limit <MB> ]", "maximum total size of all backups (default: no limit)");
+    hf.addItem("[ snapshot ]", "read registries from (and write) binary snapshots, when up to date");
     hf.addItem("( push <path>", "mark file or directory for pushing new version");
     hf.addItem("| forget <path>", "stop tracking file or directory within archive");
+    hf.addItem("| fetch <path>", "pull the most recent version of an object");
     hf.addItem("| update )", "perform requested actions, synchronize remote and local objects");
     b.pr(hf);
   }
@@ -196,20 +265,47 @@ public final class ArchiveOper extends AppOper {
   protected void processAdditionalArgs() {
     mProjectDirectory = new File(cmdLineArgs().nextArgIf("dir", ""));
     mMockRemoteDir = new File(cmdLineArgs().nextArgIf("mock_remote", ""));
+    mMockLatencyMs = Integer.parseInt(cmdLineArgs().nextArgIf("mock_latency", "0"));
+    mThreadCount = Integer.parseInt(cmdLineArgs().nextArgIf("threads", "1"));
+    mIncrementalPull = cmdLineArgs().nextArgIf("incremental");
+    mPartSize = Long.parseLong(cmdLineArgs().nextArgIf("part_size", "0")) << 20;
+    mPartThreadCount = Integer.parseInt(cmdLineArgs().nextArgIf("part_threads", "4"));
+    mMockBandwidth = Long.parseLong(cmdLineArgs().nextArgIf("mock_bandwidth", "0")) << 10;
+    mZipThreadCount = Integer.parseInt(cmdLineArgs().nextArgIf("zip_threads",
+        Integer.toString(Runtime.getRuntime().availableProcessors())));
+    mListingTtlMs = Long.parseLong(cmdLineArgs().nextArgIf("listing_ttl", "300")) * 1000;
+    mCacheLimit = Long.parseLong(cmdLineArgs().nextArgIf("cache_limit", "0")) << 20;
+    mCacheDirectory = new File(cmdLineArgs().nextArgIf("cache_dir", ""));
+    mOnlyPatternsArg = cmdLineArgs().nextArgIf("only", "");
+    mLazyPull = cmdLineArgs().nextArgIf("lazy");
+    mBackupCount = Integer.parseInt(cmdLineArgs().nextArgIf("backup_count", "3"));
+    mBackupByteLimit = Long.parseLong(cmdLineArgs().nextArgIf("backup_limit", "0")) << 20;
+    mRegistrySnapshots = cmdLineArgs().nextArgIf("snapshot");
+    mBackupRootDirectory = new File(cmdLineArgs().nextArgIf("backup_dir", ""));
     mPushPathArg = cmdLineArgs().nextArgIf("push", "");
     mForgetPathArg = cmdLineArgs().nextArgIf("forget", "");
     mOffloadPathArg = cmdLineArgs().nextArgIf("offload", "");
+    mFetchPathArg = cmdLineArgs().nextArgIf("fetch", "");
     mUpdateOperationFlag = cmdLineArgs().nextArgIf("update");
   }
 
   private void fixPaths() {
-    if (Files.empty(mProjectDirectory))
-      mProjectDirectory = Files.getCanonicalFile(Files.parent(files().projectConfigDirectory()));
-    else
+    if (Files.empty(mProjectDirectory)) {
+      mConfigDirectory = files().projectConfigDirectory();
+      mProjectDirectory = Files.getCanonicalFile(Files.parent(mConfigDirectory));
+    } else {
       mProjectDirectory = Files.getCanonicalFile(mProjectDirectory);
+      // The registries belong to the project, not to whichever project contains the current directory
+      mConfigDirectory = new File(mProjectDirectory, files().projectConfigDirectory().getName());
+    }
+    if (Files.empty(mBackupRootDirectory))
+      mBackupRootDirectory = Files.getDesktopFile("_archive_backup_");
     if (Files.nonEmpty(mMockRemoteDir))
       mMockRemoteDir = Files.getCanonicalFile(mMockRemoteDir);
-    mTemporaryFile = fileWithinProjectDir("_SKIP_temp.zip");
+    if (mThreadCount < 1)
+      setError("Bad thread count:", mThreadCount);
+    if (mBackupCount < 1)
+      setError("Bad backup count:", mBackupCount);
   }
 
   private Oper mOper;
@@ -237,9 +333,15 @@ public final class ArchiveOper extends AppOper {
       setOper(Oper.PUSH, mPushPathArg);
       setOper(Oper.FORGET, mForgetPathArg);
       setOper(Oper.OFFLOAD, mOffloadPathArg);
+      setOper(Oper.FETCH, mFetchPathArg);
+    }
+    try {
+      auxPerform();
+      flushRegistries();
+    } finally {
+      if (mZipPool != null)
+        mZipPool.shutdownNow();
     }
-    auxPerform();
-    flushRegistries();
   }
 
   private void auxPerform() {
@@ -248,6 +350,7 @@ public final class ArchiveOper extends AppOper {
 
     readGlobalRegistry();
     readHiddenRegistry();
+    recoverInterruptedTransfers();
     validateEntryStates();
 
     if (mOper == null)
@@ -266,15 +369,33 @@ public final class ArchiveOper extends AppOper {
     case OFFLOAD:
       markForOffloading(mOffloadPathArg);
       break;
+    case FETCH: {
+      String key = keyFromUserArg(mFetchPathArg);
+      LocalEntry local = localEntryForKey(key, "No local entry found for key:", key);
+      if (local.offload())
+        setError("Object is offloaded:", quote(key));
+      // Only pull the object; any other pending operation must be performed by an update
+      if (local.pending() != Oper.NONE && local.pending() != Oper.FETCH)
+        setError("Object has a pending operation:", local.pending(), quote(key));
+      if (mRegistryGlobal.entries().get(key).version() == 0)
+        setError("Object has never been pushed:", quote(key));
+      mLazyPull = false;
+      updateEntries((k, entry) -> k.equals(key));
+      log(map().put("pulled", mPulledCount));
+    }
+      break;
     case UPDATE: {
       processForgetFlags();
-      updateEntries();
-      flushRegistries();
+      updateEntries(entryFilter());
       log(map().put("entries", mRegistryGlobal.entries().size())//
           .put("pushed", mPushedCount)//
+          .put("unchanged", mUnchangedCount)//
           .put("pulled", mPulledCount)//
+          .put("deferred", mDeferredCount)//
           .put("offloaded", mOffloadedCount)//
           .put("forgotten", mForgottenCount)//
+          .put("cache_hits", versionCache().hits())//
+          .put("cache_misses", versionCache().misses())//
       );
     }
       break;
@@ -289,24 +410,58 @@ public final class ArchiveOper extends AppOper {
 
   private void readGlobalRegistry() {
     File globalFile = registerGlobalFile();
-    ArchiveRegistry registry = Files.parseAbstractData(ArchiveRegistry.DEFAULT_INSTANCE, globalFile);
+    ArchiveRegistry registry;
+    if (mRegistrySnapshots) {
+      registry = RegistrySnapshot.read(files(), ArchiveRegistry.DEFAULT_INSTANCE, globalFile,
+          snapshotFile(globalFile));
+      if (registry == null)
+        Files.assertExists(globalFile);
+    } else
+      registry = Files.parseAbstractData(ArchiveRegistry.DEFAULT_INSTANCE, globalFile);
     mRegistryGlobalOriginal = registry;
     registry = updateGlobalRegistry(registry);
     validateGlobalRegistry(registry, globalFile.getName());
     mRegistryGlobal = registry.toBuilder();
+    mRegistryIndex = new RegistryIndex(mRegistryGlobal.entries());
+  }
+
+  /**
+   * Add or replace an entry within the global registry (and its index)
+   */
+  private void putGlobalEntry(String key, ArchiveEntry entry) {
+    mRegistryGlobal.entries().put(key, entry);
+    mRegistryIndex.put(key, entry);
+  }
+
+  private void removeGlobalEntry(String key) {
+    mRegistryGlobal.entries().remove(key);
+    mRegistryIndex.remove(key);
   }
 
   private File registerGlobalFile() {
-    return files().fileWithinProjectConfigDirectory("archive_registry.json");
+    return configFile("archive_registry.json");
   }
 
   private File registerLocalFile() {
-    return files().fileWithinProjectConfigDirectory(".archive_registry.json");
+    return configFile(".archive_registry.json");
+  }
+
+  /**
+   * Get the file containing the binary snapshot of a registry (this is never
+   * tracked by git)
+   */
+  private File snapshotFile(File registryFile) {
+    return configFile("_SKIP_" + chomp(registryFile.getName(), ".json") + ".snapshot");
   }
 
   private void readHiddenRegistry() {
     File hiddenFile = registerLocalFile();
-    LocalRegistry registry = Files.parseAbstractDataOpt(LocalRegistry.DEFAULT_INSTANCE, hiddenFile);
+    LocalRegistry registry = null;
+    if (mRegistrySnapshots)
+      registry = RegistrySnapshot.read(files(), LocalRegistry.DEFAULT_INSTANCE, hiddenFile,
+          snapshotFile(hiddenFile));
+    if (registry == null)
+      registry = Files.parseAbstractDataOpt(LocalRegistry.DEFAULT_INSTANCE, hiddenFile);
     if (EXTRA)
       pr("read hidden registry:", INDENT, registry);
     mRegistryLocalOriginal = registry;
@@ -385,6 +540,8 @@ public final class ArchiveOper extends AppOper {
       if (EXTRA)
         log("GLOBAL", INDENT, mRegistryGlobal);
       files().writePretty(registerGlobalFile(), mRegistryGlobal);
+      if (mRegistrySnapshots)
+        RegistrySnapshot.write(files(), mRegistryGlobal, registerGlobalFile(), snapshotFile(registerGlobalFile()));
     }
 
     if (!mRegistryLocalOriginal.equals(mRegistryLocal)) {
@@ -392,34 +549,138 @@ public final class ArchiveOper extends AppOper {
       if (EXTRA)
         log("HIDDEN", INDENT, mRegistryLocal);
       files().writePretty(registerLocalFile(), mRegistryLocal);
+      if (mRegistrySnapshots)
+        RegistrySnapshot.write(files(), mRegistryLocal, registerLocalFile(), snapshotFile(registerLocalFile()));
     }
   }
 
-  private void updateEntries() {
-    Map<String, ArchiveEntry> modifiedEntries = hashMap();
+  /**
+   * Construct a filter for the entries to be updated, from the 'only' argument
+   */
+  private BiPredicate<String, ArchiveEntry> entryFilter() {
+    if (mOnlyPatternsArg.isEmpty())
+      return (key, entry) -> true;
+    List<PathMatcher> matchers = arrayList();
+    for (String pattern : split(mOnlyPatternsArg, ','))
+      matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim()));
+    return (key, entry) -> {
+      for (PathMatcher m : matchers)
+        if (m.matches(Paths.get(key)) || (Files.nonEmpty(entry.path()) && m.matches(entry.path().toPath())))
+          return true;
+      return false;
+    };
+  }
 
+  private void updateEntries(BiPredicate<String, ArchiveEntry> filter) {
+    List<EntryContext> contexts = arrayList();
     for (Entry<String, ArchiveEntry> ent : mRegistryGlobal.entries().entrySet()) {
+      String key = ent.getKey();
       ArchiveEntry entry = ent.getValue();
+      if (!filter.test(key, entry))
+        continue;
+      contexts.add(new EntryContext(contexts.size(), key, entry, mRegistryLocal.entries().get(key),
+          absoluteFileForEntry(key, entry)));
+    }
 
-      mKey = ent.getKey();
-      mEntry = entry.toBuilder();
+    RuntimeException failure = null;
+    if (mThreadCount == 1) {
+      try {
+        for (EntryContext c : contexts)
+          updateEntry(c);
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+    } else {
+      log("...updating entries using", mThreadCount, "threads");
+      ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+      try {
+        List<Future<?>> futures = arrayList();
+        for (EntryContext c : contexts)
+          futures.add(executor.submit(() -> updateEntry(c)));
+        for (Future<?> f : futures) {
+          try {
+            f.get();
+          } catch (ExecutionException e) {
+            if (failure == null)
+              failure = asRuntimeException(e.getCause());
+          } catch (InterruptedException e) {
+            throw asRuntimeException(e);
+          }
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
 
-      LocalEntry origHidden = mRegistryLocal.entries().get(mKey);
-      mHiddenEntry = origHidden.toBuilder();
-      mSourceFile = absoluteFileForEntry(mKey, mEntry);
+    // Merge the results of the entries that were successfully updated, so that versions
+    // that were pushed before any failure are still recorded in the registries
+    //
+    mergeEntryResults(contexts);
+    flushRegistries();
+    if (mRemote != null)
+      mRemote.flushListing();
+    pruneBackupsInBackground();
 
-      updateEntry();
+    // Now that the registries reflect the completed transfers, they can be removed from the journal
+    for (EntryContext c : contexts)
+      if (c.mCompleted)
+        journal().end(c.mKey);
 
-      ArchiveEntry updatedEntry = mEntry.build();
-      if (!updatedEntry.equals(entry)) {
-        log("...storing new version of entry:", mKey, INDENT, updatedEntry);
-        modifiedEntries.put(mKey, updatedEntry);
+    if (failure != null)
+      throw failure;
+  }
+
+  /**
+   * Examine the journal for transfers that were interrupted. An object whose
+   * pull was interrupted may have been partially written, so its local version
+   * is reset (forcing it to be pulled again). Interrupted pushes are resumed
+   * when the object is next pushed
+   */
+  private void recoverInterruptedTransfers() {
+    for (Entry<String, Transfer> ent : journal().interrupted().entrySet()) {
+      String key = ent.getKey();
+      Transfer t = ent.getValue();
+      LocalEntry local = mRegistryLocal.entries().get(key);
+      if (local == null)
+        continue;
+      if (t.push()) {
+        pr("*** Push of version", t.version(), "of", quote(key), "was interrupted; it will be resumed");
+        continue;
       }
-      LocalEntry updatedHidden = mHiddenEntry.build();
-      if (!updatedHidden.equals(origHidden))
-        mRegistryLocal.entries().put(mKey, updatedHidden);
+      pr("*** Pull of version", t.version(), "of", quote(key),
+          "was interrupted; local copy may be incomplete, and will be pulled again");
+      if (local.pending() == Oper.PUSH)
+        pr("*** Warning: a push is pending for", quote(key), "but its local copy may be incomplete");
+      mRegistryLocal.entries().put(key, local.toBuilder().version(0).fileStamps(null).build());
     }
-    mRegistryGlobal.entries().putAll(modifiedEntries);
+  }
+
+  private void mergeEntryResults(List<EntryContext> contexts) {
+    Map<String, ArchiveEntry> modifiedEntries = hashMap();
+    for (EntryContext c : contexts) {
+      if (!c.mCompleted)
+        continue;
+      ArchiveEntry updatedEntry = c.mEntry.build();
+      if (!updatedEntry.equals(c.mOriginalEntry)) {
+        log("...storing new version of entry:", c.mKey, INDENT, updatedEntry);
+        modifiedEntries.put(c.mKey, updatedEntry);
+      }
+      LocalEntry updatedHidden = c.mHiddenEntry.build();
+      if (!updatedHidden.equals(c.mOriginalHiddenEntry))
+        mRegistryLocal.entries().put(c.mKey, updatedHidden);
+      if (c.mPushed)
+        mPushedCount++;
+      if (c.mUnchanged)
+        mUnchangedCount++;
+      if (c.mPulled)
+        mPulledCount++;
+      if (c.mOffloaded)
+        mOffloadedCount++;
+      if (c.mDeferred)
+        mDeferredCount++;
+    }
+    for (Entry<String, ArchiveEntry> ent : modifiedEntries.entrySet())
+      putGlobalEntry(ent.getKey(), ent.getValue());
   }
 
   private void processForgetFlags() {
@@ -427,19 +688,26 @@ public final class ArchiveOper extends AppOper {
 
     for (Entry<String, LocalEntry> ent : mRegistryLocal.entries().entrySet()) {
       LocalEntry entry = ent.getValue();
-      mKey = ent.getKey();
       if (entry.pending() == Oper.FORGET)
-        keysToDelete.add(mKey);
+        keysToDelete.add(ent.getKey());
     }
 
     mForgottenCount = keysToDelete.size();
     if (!keysToDelete.isEmpty()) {
       log("...forgetting:", keysToDelete);
-      mRegistryGlobal.entries().keySet().removeAll(keysToDelete);
+      for (String key : keysToDelete)
+        removeGlobalEntry(key);
       mRegistryLocal.entries().keySet().removeAll(keysToDelete);
     }
   }
 
+  /**
+   * Get a file within the project's configuration directory
+   */
+  private File configFile(String name) {
+    return new File(mConfigDirectory, name);
+  }
+
   private File fileWithinProjectDir(File relativePath) {
     return fileWithinProjectDir(relativePath.toString());
   }
@@ -495,7 +763,7 @@ public final class ArchiveOper extends AppOper {
       if (file.isDirectory())
         b.directory(true);
       log("...creating new entry with id", key);
-      mRegistryGlobal.entries().put(key, b.build());
+      putGlobalEntry(key, b.build());
 
       // Create a new local entry as well
       mRegistryLocal.entries().put(key, LocalEntry.DEFAULT_INSTANCE);
@@ -504,6 +772,9 @@ public final class ArchiveOper extends AppOper {
     LocalEntry entry = localEntryForKey(key);
     if (entry.offload() || entry.pending() == Oper.FORGET)
       unexpectedStateError(key);
+    // Pushing a local copy that is older than the archive's would discard the newer version
+    if (entry.pending() == Oper.FETCH)
+      setError("Object must be fetched before it can be pushed:", quote(key));
 
     LocalEntry updatedEntry = setPending(entry, Oper.PUSH).build();
     if (!updatedEntry.equals(entry)) {
@@ -514,14 +785,7 @@ public final class ArchiveOper extends AppOper {
   }
 
   private String optKeyForFile(File file) {
-    List<String> foundKeys = arrayList();
-
-    for (Entry<String, ArchiveEntry> ent : mRegistryGlobal.entries().entrySet()) {
-      String key = ent.getKey();
-      ArchiveEntry entry = ent.getValue();
-      if (entry.path().equals(file))
-        foundKeys.add(key);
-    }
+    List<String> foundKeys = mRegistryIndex.keysForPath(file);
     if (foundKeys.isEmpty())
       return null;
 
@@ -604,70 +868,81 @@ public final class ArchiveOper extends AppOper {
       pr("Already marked for offload:", key);
   }
 
-  private void updateEntry() {
-    if (mHiddenEntry.offload()) {
-      log("Ignoring offloaded entry:", mKey);
+  private void updateEntry(EntryContext c) {
+    if (c.mHiddenEntry.offload()) {
+      log("Ignoring offloaded entry:", c.mKey);
+      c.mCompleted = true;
       return;
     }
 
     // If item has never been pushed, do so
-    if (mEntry.version() == 0 && mHiddenEntry.pending() != Oper.PUSH) {
-      log("Entry has never been pushed, doing so:", mKey);
-      Files.assertExists(mSourceFile);
-      if (mSourceFile.isDirectory()) {
-        mEntry.directory(true);
+    if (c.mEntry.version() == 0 && c.mHiddenEntry.pending() != Oper.PUSH) {
+      log("Entry has never been pushed, doing so:", c.mKey);
+      Files.assertExists(c.mSourceFile);
+      if (c.mSourceFile.isDirectory()) {
+        c.mEntry.directory(true);
       }
-      setPending(mHiddenEntry, Oper.PUSH);
+      setPending(c.mHiddenEntry, Oper.PUSH);
     }
 
-    switch (mHiddenEntry.pending()) {
+    switch (c.mHiddenEntry.pending()) {
     default:
-      unexpectedStateError(mKey);
+      unexpectedStateError(c.mKey);
       break;
     case PUSH:
-      if (mHiddenEntry.offload())
-        unexpectedStateError(mKey);
-      pushEntry();
-      mPushedCount++;
+      if (c.mHiddenEntry.offload())
+        unexpectedStateError(c.mKey);
+      if (pushEntry(c))
+        c.mPushed = true;
+      else
+        c.mUnchanged = true;
       break;
     case OFFLOAD:
-      log("...offloading entry:", mKey);
-      mOffloadedCount++;
-      mHiddenEntry.offload(true);
-      File sourcePath = mSourceFile;
+      log("...offloading entry:", c.mKey);
+      c.mOffloaded = true;
+      c.mHiddenEntry.offload(true);
+      File sourcePath = c.mSourceFile;
       if (sourcePath.exists()) {
-        log("...deleting local copy of offloaded entry:", mKey);
+        log("...deleting local copy of offloaded entry:", c.mKey);
         if (sourcePath.isDirectory())
           files().deleteDirectory(sourcePath);
         else
           files().deleteFile(sourcePath);
       }
       break;
+    case FETCH:
     case NONE: {
-      int mostRecentVersion = Math.max(1, mEntry.version());
-      if (mostRecentVersion != mHiddenEntry.version())
-
-        pullVersion(mostRecentVersion);
-      mPulledCount++;
+      int mostRecentVersion = Math.max(1, c.mEntry.version());
+      if (mostRecentVersion != c.mHiddenEntry.version()) {
+        if (mLazyPull) {
+          log("...deferring pull of version " + mostRecentVersion, "of:", c.mKey);
+          c.mDeferred = true;
+          // Record that the object is awaiting a fetch
+          c.mHiddenEntry.pending(Oper.FETCH);
+          c.mCompleted = true;
+          return;
+        }
+        pullVersion(c, mostRecentVersion);
+      }
+      c.mPulled = true;
     }
       break;
     }
-    mHiddenEntry.pending(null);
-  }
-
-  private boolean singleFile() {
-    return !mEntry.directory();
+    c.mHiddenEntry.pending(null);
+    c.mCompleted = true;
   }
 
   /**
    * Determine name of file within archive corresponding to a version of an
    * object
    */
-  private String filenameWithVersion(int version) {
-    String basename = Files.basename(mKey);
+  private String filenameWithVersion(EntryContext c, int version) {
+    String basename = Files.basename(c.mKey);
     String ext;
-    if (singleFile())
-      ext = Files.getExtension(mEntry.path());
+    if (c.singleFile())
+      ext = Files.getExtension(c.mEntry.path());
+    else if (c.mEntry.chunked())
+      ext = "json";
     else
       ext = "zip";
     if (ext.isEmpty())
@@ -676,145 +951,441 @@ public final class ArchiveOper extends AppOper {
       return String.format("%s_%03d.%s", basename, version, ext);
   }
 
-  private void pushEntry() {
+  /**
+   * Push a new version of an object, unless its content is identical to the
+   * most recently pushed version
+   *
+   * @return true if a new version was pushed
+   */
+  private boolean pushEntry(EntryContext c) {
 
     // If path is empty, derive one from the key
-    if (Files.empty(mEntry.path()))
-      mEntry.path(new File(mKey));
+    if (Files.empty(c.mEntry.path()))
+      c.mEntry.path(new File(c.mKey));
+
+    String digest = contentDigest(c);
+    if (c.mEntry.version() != 0 && digest.equals(c.mEntry.digest())) {
+      log("...content unchanged since version " + c.mEntry.version() + ", not pushing:", c.mKey);
+      c.mHiddenEntry.version(c.mEntry.version());
+      return false;
+    }
 
-    int nextVersionNumber = mEntry.version() + 1;
-    String versionedFilename = filenameWithVersion(nextVersionNumber);
-    log("...pushing version " + nextVersionNumber, "of:", mKey, "to", versionedFilename);
-    log("...source:", mSourceFile);
+    int nextVersionNumber = c.mEntry.version() + 1;
+    String versionedFilename = filenameWithVersion(c, nextVersionNumber);
+    log("...pushing version " + nextVersionNumber, "of:", c.mKey, "to", versionedFilename);
+    log("...source:", c.mSourceFile);
+
+    boolean exists = remote().fileExists(versionedFilename);
+    boolean existsAsParts = !exists
+        && remote().fileExists(MultipartTransfer.manifestName(versionedFilename));
+    if (exists || existsAsParts) {
+      // If a previous push of this content was interrupted after the object was stored,
+      // but before the registries were updated, we need only record it
+      Transfer resumed = journal().interrupted(c.mKey, true, nextVersionNumber, versionedFilename, digest);
+      if (resumed == null)
+        setError("Version", versionedFilename, "already exists in cloud");
+      log("...version was pushed by interrupted update:", versionedFilename);
+      c.mEntry.version(nextVersionNumber);
+      c.mEntry.digest(digest);
+      c.mEntry.parts(existsAsParts ? resumed.partHashes().size() : 0);
+      c.mHiddenEntry.version(nextVersionNumber);
+      return true;
+    }
 
-    if (device().fileExists(versionedFilename))
-      setError("Version", versionedFilename, "already exists in cloud");
+    // Don't journal the push until we know the version doesn't already exist, so a record is never
+    // left that could cause another client's object to be mistaken for ours
+    journal().begin(c.mKey, true, nextVersionNumber, versionedFilename, digest);
+    try {
+      pushVersion(c, nextVersionNumber, versionedFilename, digest);
+    } catch (RuntimeException e) {
+      // A multipart push can be resumed from the parts that were uploaded; any other push is abandoned
+      Transfer t = journal().interrupted(c.mKey, true, nextVersionNumber, versionedFilename, digest);
+      if (t == null || t.partHashes().isEmpty())
+        journal().end(c.mKey);
+      throw e;
+    }
+    return true;
+  }
 
+  private void pushVersion(EntryContext c, int nextVersionNumber, String versionedFilename, String digest) {
     File sourceFile;
-    if (singleFile()) {
-      if (specificFilesOnly())
-        setError("file_extensions can only be specified for directories;", mKey);
-      sourceFile = mSourceFile;
-    } else
-      sourceFile = createZipFile(mSourceFile);
+    if (c.singleFile()) {
+      if (c.specificFilesOnly())
+        setError("file_extensions can only be specified for directories;", c.mKey);
+      if (c.mEntry.chunked())
+        setError("chunked can only be specified for directories;", c.mKey);
+      sourceFile = c.mSourceFile;
+    } else if (c.mEntry.chunked())
+      sourceFile = createChunkManifest(c, c.mSourceFile);
+    else
+      sourceFile = createZipFile(c, c.mSourceFile);
+
+    // Add the new version to the cache before pushing it, since a temporary file may be moved by the push
+    versionCache().put(versionedFilename, digest, sourceFile);
 
+    int parts = 0;
     if (!files().dryRun()) {
-      device().push(sourceFile, versionedFilename);
+      if (mPartSize > 0 && sourceFile.length() > mPartSize)
+        parts = multipart().push(sourceFile, versionedFilename, journal().partTracker(c.mKey));
+      else if (c.singleFile())
+        remote().push(sourceFile, versionedFilename);
+      else
+        remote().pushTemporary(sourceFile, versionedFilename);
     }
 
-    if (!singleFile())
+    if (!c.singleFile())
       files().deleteFile(sourceFile);
 
-    mEntry.version(nextVersionNumber);
-    mHiddenEntry.version(nextVersionNumber);
+    c.mEntry.version(nextVersionNumber);
+    c.mEntry.digest(digest);
+    c.mEntry.parts(parts);
+    c.mHiddenEntry.version(nextVersionNumber);
   }
 
-  private void pullVersion(int desiredVersion) {
-    log("...pulling version " + desiredVersion, "of:", mKey);
-    String versionedFilename = filenameWithVersion(desiredVersion);
+  /**
+   * Calculate the digest of an object's local content, updating the cached
+   * file stamps within its local entry
+   */
+  private String contentDigest(EntryContext c) {
+    ContentHasher hasher = new ContentHasher(c.mHiddenEntry.fileStamps());
+    String digest;
+    if (c.singleFile())
+      digest = hasher.digestFile(c.mSourceFile);
+    else
+      digest = hasher.digestDirectory(c.mSourceFile, filesToZip(c, c.mSourceFile));
+    log("...digest:", digest, "files hashed:", hasher.filesHashed());
+    c.mHiddenEntry.fileStamps(hasher.stamps());
+    return digest;
+  }
 
-    files().deleteFile(tempFile());
+  private void pullVersion(EntryContext c, int desiredVersion) {
+    log("...pulling version " + desiredVersion, "of:", c.mKey);
+    String versionedFilename = filenameWithVersion(c, desiredVersion);
+    File tempFile = c.tempFile();
+
+    journal().begin(c.mKey, false, desiredVersion, versionedFilename, c.mEntry.digest());
+
+    files().deleteFile(tempFile);
 
     if (!files().dryRun()) {
-      device().pull(versionedFilename, tempFile());
+      // The entry's digest describes its most recent version
+      String digest = (desiredVersion == c.mEntry.version()) ? c.mEntry.digest() : "";
+      if (!versionCache().get(versionedFilename, digest, tempFile)) {
+        if (c.mEntry.parts() != 0)
+          multipart().pull(versionedFilename, tempFile);
+        else
+          remote().pull(versionedFilename, tempFile);
+        versionCache().put(versionedFilename, digest, tempFile);
+      }
     }
 
-    if (singleFile()) {
-      if (mSourceFile.exists())
-        createBackupOfOldLocalVersion(mKey, mSourceFile, false);
+    File sourceFile = c.mSourceFile;
+    if (c.singleFile()) {
+      if (sourceFile.exists())
+        createBackupOfOldLocalVersion(c.mKey, sourceFile, false);
 
-      files().mkdirs(mSourceFile.getParentFile());
-      files().moveFile(tempFile(), mSourceFile);
+      files().mkdirs(sourceFile.getParentFile());
+      files().moveFile(tempFile, sourceFile);
     } else {
-      if (specificFilesOnly()) {
-        if (mSourceFile.exists()) {
-          createBackupOfOldLocalVersion(mKey, mSourceFile, false);
+      if (mIncrementalPull && !c.mEntry.chunked() && sourceFile.isDirectory()) {
+        if (!files().dryRun())
+          patchDirectory(c, tempFile, sourceFile);
+      } else if (c.specificFilesOnly()) {
+        if (sourceFile.exists()) {
+          createBackupOfOldLocalVersion(c.mKey, sourceFile, false);
           // Delete old versions of the types of extensions we want to restore
-          for (File relFile : filesToZip(mSourceFile)) {
-            files().deleteFile(new File(mSourceFile, relFile.toString()));
+          for (File relFile : filesToZip(c, sourceFile)) {
+            files().deleteFile(new File(sourceFile, relFile.toString()));
           }
         } else {
-          files().mkdirs(mSourceFile);
+          files().mkdirs(sourceFile);
         }
 
-        if (!files().dryRun()) {
-          Predicate<File> filter = null;
-          if (specificFilesOnly())
-            filter = (f) -> {
-              String ext = Files.getExtension(f);
-              if (mEntry.fileExtensions().contains(ext))
-                return true;
-              pr("*** Skipping file with unexpected extension, key:", mKey, INDENT, f);
-              return false;
-            };
-          Files.unzip(tempFile(), mSourceFile, filter);
-        }
+        if (!files().dryRun())
+          unpackVersion(c, tempFile, sourceFile, extensionFilter(c));
       } else {
-        File target = fileWithinProjectDir("_SKIP_unzip_temp");
+        File target = fileWithinProjectDir("_SKIP_unzip_temp_" + c.tempName());
         files().deleteDirectory(target);
         files().mkdirs(target);
         if (!files().dryRun())
-          Files.unzip(tempFile(), target, null);
+          unpackVersion(c, tempFile, target, null);
 
-        if (mSourceFile.exists())
-          createBackupOfOldLocalVersion(mKey, mSourceFile, true);
+        if (sourceFile.exists())
+          createBackupOfOldLocalVersion(c.mKey, sourceFile, true);
 
-        files().mkdirs(mSourceFile.getParentFile());
-        files().moveDirectory(target, mSourceFile);
+        files().mkdirs(sourceFile.getParentFile());
+        files().moveDirectory(target, sourceFile);
       }
     }
 
-    files().deleteFile(tempFile());
-    mHiddenEntry.version(desiredVersion);
+    files().deleteFile(tempFile);
+    c.mHiddenEntry.version(desiredVersion);
+    // The cached file stamps describe the previous local content
+    c.mHiddenEntry.fileStamps(null);
   }
 
-  private void createBackupOfOldLocalVersion(String backupName, File sourceFileOrDirectory,
-      boolean deleteOriginalDirectory) {
-    File backupsDir = files().mkdirs(Files.getDesktopFile("_archive_backup_/" + backupName));
-    List<File> backups = arrayList();
-    for (File f : Files.files(backupsDir)) {
-      if (RegExp.patternMatchesString("\\d+", f.getName()))
-        backups.add(f);
+  /**
+   * Extract the files from a pulled version of a directory object
+   */
+  private void unpackVersion(EntryContext c, File versionFile, File targetDirectory, Predicate<File> filter) {
+    if (c.mEntry.chunked()) {
+      ChunkManifest manifest = Files.parseAbstractData(ChunkManifest.DEFAULT_INSTANCE, versionFile);
+      chunkStore().restore(manifest, targetDirectory, filter);
+    } else
+      Files.unzip(versionFile, targetDirectory, filter);
+  }
+
+  /**
+   * If an object is restricted to particular file extensions, construct a
+   * filter that rejects files with other extensions; else, null
+   */
+  private Predicate<File> extensionFilter(EntryContext c) {
+    if (!c.specificFilesOnly())
+      return null;
+    return (f) -> {
+      String ext = Files.getExtension(f);
+      if (c.mEntry.fileExtensions().contains(ext))
+        return true;
+      pr("*** Skipping file with unexpected extension, key:", c.mKey, INDENT, f);
+      return false;
+    };
+  }
+
+  /**
+   * Update a local directory in place to match a pulled zip file. Only the
+   * files whose size or CRC differ from the zip's central directory are
+   * written, and local files that are not within the zip are deleted. The
+   * backup holds only the files that are replaced or deleted
+   */
+  private void patchDirectory(EntryContext c, File zipFile, File directory) {
+    Predicate<File> filter = extensionFilter(c);
+    List<ZipEntry> changedEntries = arrayList();
+    Set<String> incomingPaths = hashSet();
+    List<File> obsoleteFiles = arrayList();
+
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        if (entry.isDirectory())
+          continue;
+        String name = entry.getName();
+        if (name.contains(".."))
+          setError("Illegal zip entry:", name, "for key:", c.mKey);
+        File relFile = new File(Files.assertRelative(name));
+        if (filter != null && !filter.test(relFile))
+          continue;
+        incomingPaths.add(name);
+        File local = new File(directory, name);
+        if (local.isFile() && local.length() == entry.getSize() && crc32(local) == entry.getCrc())
+          continue;
+        changedEntries.add(entry);
+        if (local.exists())
+          obsoleteFiles.add(relFile);
+      }
+
+      List<File> removedFiles = arrayList();
+      for (File relFile : filesToZip(c, directory)) {
+        if (!incomingPaths.contains(relFile.toString()))
+          removedFiles.add(relFile);
+      }
+      obsoleteFiles.addAll(removedFiles);
+
+      log("...patching:", c.mKey, "changed:", changedEntries.size(), "removed:", removedFiles.size());
+
+      // Move the files that are about to be replaced or deleted into the backup
+      if (!obsoleteFiles.isEmpty()) {
+        File backupDir = newBackupTarget(c.mKey);
+        for (File relFile : obsoleteFiles) {
+          File dest = new File(backupDir, relFile.toString());
+          files().mkdirs(dest.getParentFile());
+          files().moveFile(new File(directory, relFile.toString()), dest);
+        }
+      }
+
+      byte[] buffer = new byte[BUFFER_SIZE];
+      for (ZipEntry entry : changedEntries) {
+        File local = new File(directory, entry.getName());
+        files().mkdirs(local.getParentFile());
+        try (InputStream input = zip.getInputStream(entry);
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(local))) {
+          while (true) {
+            int count = input.read(buffer);
+            if (count < 0)
+              break;
+            output.write(buffer, 0, count);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
     }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static long crc32(File file) {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream input = new FileInputStream(file)) {
+      while (true) {
+        int count = input.read(buffer);
+        if (count < 0)
+          break;
+        crc.update(buffer, 0, count);
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Determine the file or directory that the next backup of an object should
+   * be stored in. Its name includes its sequence number and its creation time.
+   * Old backups are pruned later, by pruneBackupsInBackground()
+   */
+  private File newBackupTarget(String backupName) {
+    File backupsDir = files().mkdirs(new File(backupRootDirectory(), backupName));
+    List<File> backups = backupsWithin(backupsDir);
 
     int version = 0;
     if (!backups.isEmpty())
-      version = 1 + Integer.parseInt(last(backups).getName());
+      version = 1 + Integer.parseInt(split(last(backups).getName(), '_').get(0));
 
-    File target = new File(backupsDir, String.format("%05d", version));
+    File target = new File(backupsDir, String.format("%05d_%d", version, System.currentTimeMillis()));
     log("...saving backup:", target);
+    return target;
+  }
+
+  private File backupRootDirectory() {
+    return mBackupRootDirectory;
+  }
+
+  /**
+   * Get the backups within a directory, oldest first
+   */
+  private static List<File> backupsWithin(File backupsDir) {
+    List<File> backups = arrayList();
+    for (File f : Files.files(backupsDir)) {
+      if (RegExp.patternMatchesString(BACKUP_NAME_PATTERN, f.getName()))
+        backups.add(f);
+    }
+    backups.sort((a, b) -> a.getName().compareTo(b.getName()));
+    return backups;
+  }
+
+  /**
+   * Get the time a backup was created, from its name. Backups made before
+   * creation times were recorded are treated as the oldest
+   */
+  private static long backupCreationTime(File backup) {
+    List<String> fields = split(backup.getName(), '_');
+    if (fields.size() < 2)
+      return 0;
+    return Long.parseLong(fields.get(1));
+  }
+
+  private static final Pattern BACKUP_NAME_PATTERN = RegExp.pattern("^\\d+(?:_\\d+)?$");
+
+  private void createBackupOfOldLocalVersion(String backupName, File sourceFileOrDirectory,
+      boolean deleteOriginalDirectory) {
+    File target = newBackupTarget(backupName);
 
     if (sourceFileOrDirectory.isDirectory()) {
       if (deleteOriginalDirectory) {
         files().moveDirectory(sourceFileOrDirectory, target);
       } else {
-        files().copyDirectory(sourceFileOrDirectory, target);
+        snapshotDirectory(sourceFileOrDirectory, target);
       }
     } else
       files().moveFile(sourceFileOrDirectory, target);
+  }
 
-    while (backups.size() >= 3) {
-      File oldBackupFileOrDirectory = backups.remove(0);
-      log("...deleting old backup:", oldBackupFileOrDirectory);
-      if (oldBackupFileOrDirectory.isDirectory())
-        files().deleteDirectory(oldBackupFileOrDirectory);
-      else
-        files().deleteFile(oldBackupFileOrDirectory);
+  /**
+   * Copy a directory into a backup. Large files are cloned where the
+   * filesystem supports it, so their data is not copied; unlike hard links,
+   * the copies are unaffected by subsequent modifications to the originals
+   */
+  private void snapshotDirectory(File sourceDirectory, File targetDirectory) {
+    if (files().dryRun())
+      return;
+    for (File relFile : new DirWalk(sourceDirectory).filesRelative()) {
+      File source = new File(sourceDirectory, relFile.toString());
+      File target = new File(targetDirectory, relFile.toString());
+      files().mkdirs(target.getParentFile());
+      LocalArchiveDevice.copy(source, target);
+    }
+  }
+
+  /**
+   * Start deleting old backups on a background thread, according to the
+   * retention policy: each object keeps at most a particular number of backups,
+   * and the oldest backups are deleted until their total size is within a
+   * limit.
+   *
+   * The operation doesn't wait for the pruning to finish. If the program exits
+   * first, whatever remains is pruned by the next update, since every update
+   * applies the policy to all the backups
+   */
+  private void pruneBackupsInBackground() {
+    if (files().dryRun() || !backupRootDirectory().isDirectory())
+      return;
+    Thread t = new Thread(() -> pruneBackups(), "backup pruner");
+    t.setDaemon(true);
+    // Don't compete with any work still being done
+    t.setPriority(Thread.MIN_PRIORITY);
+    t.start();
+  }
+
+  private void pruneBackups() {
+    List<File> allBackups = arrayList();
+    for (File backupsDir : Files.files(backupRootDirectory())) {
+      if (!backupsDir.isDirectory())
+        continue;
+      List<File> backups = backupsWithin(backupsDir);
+      while (backups.size() > mBackupCount)
+        deleteBackup(backups.remove(0));
+      allBackups.addAll(backups);
+    }
+
+    if (mBackupByteLimit == 0)
+      return;
+    Map<File, Long> sizes = hashMap();
+    long totalBytes = 0;
+    for (File backup : allBackups) {
+      long size = backupSize(backup);
+      sizes.put(backup, size);
+      totalBytes += size;
+    }
+    allBackups.sort((a, b) -> Long.compare(backupCreationTime(a), backupCreationTime(b)));
+    for (File backup : allBackups) {
+      if (totalBytes <= mBackupByteLimit)
+        break;
+      totalBytes -= sizes.get(backup);
+      deleteBackup(backup);
     }
   }
 
-  private File tempFile() {
-    return mTemporaryFile;
+  private static long backupSize(File backup) {
+    if (!backup.isDirectory())
+      return backup.length();
+    long size = 0;
+    for (File f : new DirWalk(backup).files())
+      size += f.length();
+    return size;
   }
 
-  private boolean specificFilesOnly() {
-    return mEntry.fileExtensions() != null;
+  private void deleteBackup(File backup) {
+    log("...deleting old backup:", backup);
+    if (backup.isDirectory())
+      files().deleteDirectory(backup);
+    else
+      files().deleteFile(backup);
   }
 
-  private List<File> filesToZip(File directory) {
+  private List<File> filesToZip(EntryContext c, File directory) {
     DirWalk dirWalk = new DirWalk(directory);
-    if (specificFilesOnly()) {
-      dirWalk.withExtensions(mEntry.fileExtensions());
+    if (c.specificFilesOnly()) {
+      dirWalk.withExtensions(c.mEntry.fileExtensions());
       dirWalk.withRecurse(false);
       todo("there is probably no need to have this 'no recurse' limitation");
     }
@@ -829,27 +1400,82 @@ public final class ArchiveOper extends AppOper {
     return result;
   }
 
-  private File createZipFile(File directory) {
-    files().deleteFile(tempFile());
+  private File createZipFile(EntryContext c, File directory) {
+    File tempFile = c.tempFile();
+    new ParallelZipper(files()).withPool(zipPool()).withLevel(c.mEntry.compressionLevel())
+        .withStoreExtensions(c.mEntry.storeExtensions()).zip(directory, filesToZip(c, directory), tempFile);
+    return tempFile;
+  }
 
-    try {
-      ZipOutputStream zipStream = new ZipOutputStream(files().outputStream(tempFile()));
-      for (File relFile : filesToZip(directory)) {
-        String relPath = relFile.toString();
-        ZipEntry zipEntry = new ZipEntry(relPath);
-        zipStream.putNextEntry(zipEntry);
-        zipStream.write(Files.toByteArray(new File(directory, relPath), "ArchiveOper.createZipFile"));
-        zipStream.closeEntry();
-      }
+  /**
+   * Store a directory's files as chunks (uploading those not already within
+   * the archive), and write a manifest describing them
+   */
+  private File createChunkManifest(EntryContext c, File directory) {
+    File tempFile = c.tempFile();
+    ChunkManifest manifest = chunkStore().store(directory, filesToZip(c, directory));
+    files().writePretty(tempFile, manifest);
+    return tempFile;
+  }
 
-      zipStream.close();
-    } catch (IOException e) {
-      throw Files.asFileException(e);
+  // ------------------------------------------------------------------
+  // State of an individual object while it is being updated
+  // ------------------------------------------------------------------
+
+  /**
+   * Each object is updated using its own context, so that several objects can
+   * be pushed or pulled concurrently. The results are merged back into the
+   * registries once all the objects have been processed
+   */
+  private final class EntryContext {
+
+    EntryContext(int index, String key, ArchiveEntry entry, LocalEntry hiddenEntry, File sourceFile) {
+      mIndex = index;
+      mKey = key;
+      mOriginalEntry = entry;
+      mOriginalHiddenEntry = hiddenEntry;
+      mEntry = entry.toBuilder();
+      mHiddenEntry = hiddenEntry.toBuilder();
+      mSourceFile = sourceFile;
+    }
+
+    boolean singleFile() {
+      return !mEntry.directory();
+    }
+
+    boolean specificFilesOnly() {
+      return mEntry.fileExtensions() != null;
+    }
+
+    /**
+     * Get a name, unique to this object, for use in constructing temporary
+     * files. Distinct keys can have the same basename (e.g. "data.csv" and
+     * "data.json"), so the name is derived from the entire key, and prefixed
+     * by the context's index in case sanitizing the key makes two keys equal
+     */
+    String tempName() {
+      return mIndex + "_" + mKey.replaceAll("[^\\w.-]", "_");
     }
 
-    checkState(tempFile().exists(), "failed to create: " + tempFile());
-    return tempFile();
+    File tempFile() {
+      return fileWithinProjectDir("_SKIP_temp_" + tempName() + ".zip");
+    }
+
+    final int mIndex;
+    final String mKey;
+    final ArchiveEntry mOriginalEntry;
+    final LocalEntry mOriginalHiddenEntry;
+    final ArchiveEntry.Builder mEntry;
+    final LocalEntry.Builder mHiddenEntry;
+    final File mSourceFile;
+    boolean mCompleted;
+    boolean mPushed;
+    boolean mUnchanged;
+    boolean mPulled;
+    boolean mOffloaded;
+    boolean mDeferred;
   }
+
   // ------------------------------------------------------------------
   // Checking object states for validity before performing operations
   // ------------------------------------------------------------------
@@ -913,10 +1539,63 @@ public final class ArchiveOper extends AppOper {
     return fileWithinProjectDir(pathString);
   }
 
-  private ArchiveDevice device() {
+  private synchronized RemoteStore remote() {
+    if (mRemote == null)
+      mRemote = new RemoteStore(files(), device()).withLatency(mMockLatencyMs).withBandwidth(mMockBandwidth)
+          // Determine which objects exist using a single listing, instead of querying each object
+          .withListing(configFile(".archive_listing.json"),
+              Files.nonEmpty(mMockRemoteDir) ? mMockRemoteDir.toString() : "s3", mListingTtlMs);
+    return mRemote;
+  }
+
+  /**
+   * Get the pool that compresses zip files. It is shared by all the objects
+   * being updated, so the number of compression threads doesn't depend upon
+   * the number of objects being updated concurrently
+   */
+  private synchronized ForkJoinPool zipPool() {
+    if (mZipPool == null)
+      mZipPool = new ForkJoinPool(mZipThreadCount);
+    return mZipPool;
+  }
+
+  private synchronized MultipartTransfer multipart() {
+    if (mMultipart == null) {
+      // The part size only affects pushes; pulls use the parts recorded in the manifest
+      long partSize = (mPartSize > 0) ? mPartSize : (64L << 20);
+      mMultipart = new MultipartTransfer(files(), remote(), fileWithinProjectDir("_SKIP_parts"), partSize,
+          mPartThreadCount);
+    }
+    return mMultipart;
+  }
+
+  private synchronized VersionCache versionCache() {
+    if (mVersionCache == null) {
+      File directory = mCacheDirectory;
+      if (Files.empty(directory))
+        directory = new File(Files.homeDirectory(), ".dev_archive_cache");
+      mVersionCache = new VersionCache(files(), directory, mCacheLimit);
+    }
+    return mVersionCache;
+  }
+
+  private synchronized TransferJournal journal() {
+    if (mJournal == null)
+      mJournal = new TransferJournal(files(), configFile(".archive_journal.json"));
+    return mJournal;
+  }
+
+  private synchronized ChunkStore chunkStore() {
+    if (mChunkStore == null)
+      mChunkStore = new ChunkStore(files(), remote(),
+          configFile(".archive_chunks"));
+    return mChunkStore;
+  }
+
+  private synchronized ArchiveDevice device() {
     if (mDevice == null) {
       if (Files.nonEmpty(mMockRemoteDir)) {
-        mDevice = new FileArchiveDevice(mMockRemoteDir);
+        mDevice = new LocalArchiveDevice(mMockRemoteDir);
         todo("will it handle an empty subfolder properly?");
       } else {
         File authFile = files().fileWithinSecrets("s3_auth.json");
@@ -938,26 +1617,48 @@ public final class ArchiveOper extends AppOper {
 
   private boolean mUpdateOperationFlag;
   private File mProjectDirectory;
-  private File mTemporaryFile;
+  private File mConfigDirectory;
 
   private ArchiveRegistry mRegistryGlobalOriginal;
   private ArchiveRegistry.Builder mRegistryGlobal;
+  private RegistryIndex mRegistryIndex;
+  private boolean mRegistrySnapshots;
 
   private LocalRegistry mRegistryLocalOriginal;
   private LocalRegistry.Builder mRegistryLocal;
 
   private int mPushedCount;
+  private int mUnchangedCount;
   private int mPulledCount;
   private int mOffloadedCount;
   private int mForgottenCount;
+  private int mDeferredCount;
 
-  private String mKey;
-  private ArchiveEntry.Builder mEntry;
-  private LocalEntry.Builder mHiddenEntry;
-  private File mSourceFile;
   private String mPushPathArg;
   private String mForgetPathArg;
   private String mOffloadPathArg;
+  private String mFetchPathArg;
+  private String mOnlyPatternsArg;
+  private boolean mLazyPull;
+  private int mBackupCount;
+  private long mBackupByteLimit;
+  private File mBackupRootDirectory;
   private File mMockRemoteDir;
   private ArchiveDevice mDevice;
+  private RemoteStore mRemote;
+  private ChunkStore mChunkStore;
+  private int mMockLatencyMs;
+  private int mThreadCount;
+  private boolean mIncrementalPull;
+  private long mPartSize;
+  private int mPartThreadCount;
+  private long mMockBandwidth;
+  private MultipartTransfer mMultipart;
+  private TransferJournal mJournal;
+  private int mZipThreadCount;
+  private ForkJoinPool mZipPool;
+  private long mListingTtlMs;
+  private long mCacheLimit;
+  private File mCacheDirectory;
+  private VersionCache mVersionCache;
 }
@@ -0,0 +1,106 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import js.base.BaseObject;
+import js.file.Files;
+import js.parsing.DFA;
+import js.parsing.DFACache;
+
+/**
+ * A store of DFAs compiled from token definitions.
+ *
+ * Each DFA compiled from token definitions is stored in a file named by a hash
+ * of those definitions, so it is compiled only once, and the directory can
+ * safely be shared between machines. All DFAs are retained in memory for the
+ * duration of the process
+ */
+public class DfaStore extends BaseObject {
+
+  public static final String DEFAULT_DIRECTORY = ".dev_dfa_store";
+
+  /**
+   * Get the store for a directory, constructing it if necessary
+   *
+   * @param directory
+   *          the store's directory; if empty, uses the default within the
+   *          user's home directory
+   */
+  public static DfaStore forDirectory(File directory) {
+    if (Files.empty(directory))
+      directory = new File(Files.homeDirectory(), DEFAULT_DIRECTORY);
+    return sStores.computeIfAbsent(directory.getAbsoluteFile(), (d) -> new DfaStore(d));
+  }
+
+  private DfaStore(File directory) {
+    mDirectory = directory;
+  }
+
+  /**
+   * Get the DFA for a set of token definitions (in .rxp form), compiling it if
+   * it isn't in the store
+   */
+  public DFA forTokenDefinitions(String rxp) {
+    return get(key("rxp", rxp), () -> DFACache.SHARED_INSTANCE.forTokenDefinitions(rxp));
+  }
+
+  public int compiled() {
+    return mCompiled.get();
+  }
+
+  private DFA get(String key, Supplier<DFA> supplier) {
+    return mMemory.computeIfAbsent(key, (k) -> {
+      var f = new File(mDirectory, k + ".dfa");
+      if (f.exists()) {
+        try {
+          return DFA.parse(Files.readString(f));
+        } catch (RuntimeException e) {
+          pr("*** failed to read stored DFA:", f, INDENT, e);
+        }
+      }
+      log("constructing DFA:", k);
+      mCompiled.incrementAndGet();
+      var dfa = supplier.get();
+      write(f, dfa.toJson().toString());
+      return dfa;
+    });
+  }
+
+  private static String key(String kind, String content) {
+    var md = Sha256.newDigest();
+    md.update(kind.getBytes(StandardCharsets.UTF_8));
+    md.update((byte) 0);
+    md.update(content.getBytes(StandardCharsets.UTF_8));
+    return Sha256.toHex(md.digest());
+  }
+
+  private void write(File f, String content) {
+    Files.S.mkdirs(mDirectory);
+    // Write to a temporary file first, so another process never sees a partially written DFA
+    var temp = new File(mDirectory, "_SKIP_" + f.getName() + "_" + ProcessHandle.current().pid());
+    try {
+      java.nio.file.Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      java.nio.file.Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // The store is only an optimization
+      pr("*** failed to store DFA:", f, INDENT, e);
+      Files.S.deleteFile(temp);
+    }
+  }
+
+  private static final Map<File, DfaStore> sStores = new ConcurrentHashMap<>();
+
+  private final File mDirectory;
+  private final Map<String, DFA> mMemory = new ConcurrentHashMap<>();
+  private final AtomicInteger mCompiled = new AtomicInteger();
+}
@@ -0,0 +1,75 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import js.file.Files;
+
+/**
+ * SHA-256 hashing of files and other content, with digests expressed as hex
+ * strings
+ */
+public final class Sha256 {
+
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw asRuntimeException(e);
+    }
+  }
+
+  public static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes)
+      sb.append(HEX_DIGITS.charAt((b >> 4) & 0xf)).append(HEX_DIGITS.charAt(b & 0xf));
+    return sb.toString();
+  }
+
+  /**
+   * Calculate the SHA-256 of a file's contents, returned as a hex string.
+   * Large files are memory-mapped, to avoid copying their contents into the
+   * JVM's heap
+   */
+  public static String hashFile(File file) {
+    MessageDigest md = newDigest();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < MAP_MIN_SIZE) {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (channel.read(buffer) >= 0) {
+          buffer.flip();
+          md.update(buffer);
+          buffer.clear();
+        }
+      } else {
+        long position = 0;
+        while (position < size) {
+          long length = Math.min(MAP_WINDOW_SIZE, size - position);
+          md.update(channel.map(MapMode.READ_ONLY, position, length));
+          position += length;
+        }
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    return toHex(md.digest());
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final long MAP_MIN_SIZE = 1L << 20;
+  private static final long MAP_WINDOW_SIZE = 1L << 28;
+
+  private static final String HEX_DIGITS = "0123456789abcdef";
+
+  private Sha256() {
+  }
+}
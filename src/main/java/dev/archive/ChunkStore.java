@@ -0,0 +1,180 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import dev.Sha256;
+import dev.gen.archive.ChunkManifest;
+import dev.gen.archive.ChunkedFile;
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * Stores directories as content-defined chunks, addressed by their hashes.
+ *
+ * Each chunk is stored within the archive as "chunk_<sha256>", and a version
+ * of a directory is represented by a (small) ChunkManifest listing the chunks
+ * for each file. Chunks are also kept in a local directory; a chunk is only
+ * added to this local directory once it is known to exist in the archive, so
+ * the presence of a local chunk means it need not be uploaded again, and
+ * pulls only fetch chunks that are missing locally
+ */
+public class ChunkStore extends BaseObject {
+
+  public static final String CHUNK_PREFIX = "chunk_";
+
+  public ChunkStore(Files files, RemoteStore remote, File localDirectory) {
+    mFiles = files;
+    mRemote = remote;
+    mLocalDirectory = files.mkdirs(localDirectory);
+  }
+
+  /**
+   * Split files into chunks, upload any chunks that the archive doesn't
+   * already have, and return a manifest describing the files
+   */
+  public ChunkManifest store(File directory, List<File> relativeFiles) {
+    Map<String, ChunkedFile> fileMap = hashMap();
+    for (File relFile : relativeFiles) {
+      String relPath = relFile.toString();
+      File file = new File(directory, relPath);
+      List<String> hashes = arrayList();
+      Chunker.split(file, (buffer, length) -> hashes.add(storeChunk(buffer, length)));
+      fileMap.put(relPath, ChunkedFile.newBuilder().size(file.length()).chunks(hashes).build());
+    }
+    return ChunkManifest.newBuilder().files(fileMap).build();
+  }
+
+  /**
+   * Reconstruct the files described by a manifest within a directory, fetching
+   * any chunks that are not available locally
+   *
+   * @param filter
+   *          if not null, only files (relative paths) satisfying this filter
+   *          are restored
+   */
+  public void restore(ChunkManifest manifest, File targetDirectory, Predicate<File> filter) {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    for (Map.Entry<String, ChunkedFile> ent : manifest.files().entrySet()) {
+      File relFile = new File(ent.getKey());
+      if (filter != null && !filter.test(relFile))
+        continue;
+      File target = new File(targetDirectory, ent.getKey());
+      mFiles.mkdirs(target.getParentFile());
+      try (OutputStream output = new BufferedOutputStream(new FileOutputStream(target))) {
+        for (String hash : ent.getValue().chunks()) {
+          try (InputStream input = new FileInputStream(localChunk(hash))) {
+            while (true) {
+              int count = input.read(buffer);
+              if (count < 0)
+                break;
+              output.write(buffer, 0, count);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw Files.asFileException(e);
+      }
+      checkState(target.length() == ent.getValue().size(), "size mismatch restoring:", target);
+    }
+  }
+
+  public int chunksUploaded() {
+    return mChunksUploaded.get();
+  }
+
+  public int chunksDownloaded() {
+    return mChunksDownloaded.get();
+  }
+
+  private String storeChunk(byte[] buffer, int length) {
+    MessageDigest md = Sha256.newDigest();
+    md.update(buffer, 0, length);
+    String hash = Sha256.toHex(md.digest());
+    File local = chunkFile(hash);
+    if (local.exists())
+      return hash;
+
+    File temp = tempChunkFile(hash);
+    try (OutputStream output = new FileOutputStream(temp)) {
+      output.write(buffer, 0, length);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+
+    String name = CHUNK_PREFIX + hash;
+    if (!mRemote.fileExists(name)) {
+      if (mFiles.dryRun()) {
+        mFiles.deleteFile(temp);
+        return hash;
+      }
+      log("...uploading chunk:", hash);
+      mRemote.push(temp, name);
+      mChunksUploaded.incrementAndGet();
+    }
+    installChunk(temp, local);
+    return hash;
+  }
+
+  /**
+   * Get the local copy of a chunk, fetching it if necessary
+   */
+  private File localChunk(String hash) {
+    File local = chunkFile(hash);
+    if (!local.exists()) {
+      File temp = tempChunkFile(hash);
+      log("...downloading chunk:", hash);
+      mRemote.pull(CHUNK_PREFIX + hash, temp);
+      mChunksDownloaded.incrementAndGet();
+      String actualHash = Sha256.hashFile(temp);
+      checkState(actualHash.equals(hash), "chunk has unexpected hash:", hash, "was:", actualHash);
+      installChunk(temp, local);
+    }
+    return local;
+  }
+
+  private File chunkFile(String hash) {
+    // Use subdirectories to avoid having huge numbers of files in a single directory
+    return new File(mLocalDirectory, hash.substring(0, 2) + "/" + hash);
+  }
+
+  private File tempChunkFile(String hash) {
+    File f = chunkFile(hash);
+    mFiles.mkdirs(f.getParentFile());
+    // Other threads (or processes) may be writing the same chunk
+    return new File(f.getParentFile(), "_SKIP_" + hash + "_" + sTempCounter.incrementAndGet() + "_"
+        + Thread.currentThread().getId());
+  }
+
+  private void installChunk(File temp, File target) {
+    try {
+      java.nio.file.Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final AtomicInteger sTempCounter = new AtomicInteger();
+
+  private final Files mFiles;
+  private final RemoteStore mRemote;
+  private final File mLocalDirectory;
+  private final AtomicInteger mChunksUploaded = new AtomicInteger();
+  private final AtomicInteger mChunksDownloaded = new AtomicInteger();
+}
@@ -0,0 +1,88 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import js.file.Files;
+
+/**
+ * Splits a file into content-defined chunks, using a rolling 'gear' hash.
+ *
+ * A chunk boundary is placed wherever the low bits of the hash are zero
+ * (subject to minimum and maximum chunk sizes). Since boundaries depend only
+ * on the nearby content, inserting or deleting bytes within a file only
+ * affects the chunks near the modification; the remaining chunks (and their
+ * hashes) are unchanged
+ */
+public final class Chunker {
+
+  public static final int MIN_CHUNK_SIZE = 1 << 18;
+  public static final int MAX_CHUNK_SIZE = 1 << 22;
+
+  // Average chunk size (beyond the minimum) is about 1M
+  private static final long BOUNDARY_MASK = (1L << 20) - 1;
+
+  public interface ChunkHandler {
+    void chunk(byte[] buffer, int length);
+  }
+
+  /**
+   * Split a file into chunks, passing each to a handler. The buffer passed to
+   * the handler is only valid for the duration of the call
+   */
+  public static void split(File file, ChunkHandler handler) {
+    byte[] buf = new byte[MAX_CHUNK_SIZE];
+    int length = 0;
+    int cursor = 0;
+    long hash = 0;
+
+    try (InputStream input = new FileInputStream(file)) {
+      while (true) {
+        if (cursor == length) {
+          if (length == MAX_CHUNK_SIZE) {
+            handler.chunk(buf, length);
+            length = 0;
+            cursor = 0;
+            hash = 0;
+          }
+          int count = input.read(buf, length, MAX_CHUNK_SIZE - length);
+          if (count < 0)
+            break;
+          length += count;
+          continue;
+        }
+        hash = (hash << 1) + GEAR[buf[cursor++] & 0xff];
+        if (cursor >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0) {
+          handler.chunk(buf, cursor);
+          System.arraycopy(buf, cursor, buf, 0, length - cursor);
+          length -= cursor;
+          cursor = 0;
+          hash = 0;
+        }
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    if (length > 0)
+      handler.chunk(buf, length);
+  }
+
+  // The table must be identical on every machine, so use a fixed seed
+  //
+  private static final long[] GEAR = new long[256];
+
+  static {
+    Random r = new Random(0x5eed_c0de_2468L);
+    for (int i = 0; i < GEAR.length; i++)
+      GEAR[i] = r.nextLong();
+    checkState(MIN_CHUNK_SIZE < MAX_CHUNK_SIZE);
+  }
+
+  private Chunker() {
+  }
+}
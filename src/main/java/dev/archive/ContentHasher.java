@@ -0,0 +1,105 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dev.Sha256;
+import dev.gen.archive.FileStamp;
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * Computes content digests for archive objects.
+ *
+ * The digest of a single file is the SHA-256 of its contents. The digest of a
+ * directory is a SHA-256 over the sorted list of (relative path, file digest)
+ * pairs, so it changes if any file is added, removed, renamed, or modified.
+ *
+ * Previously computed file hashes are supplied as a map of FileStamps; a file
+ * is only rehashed if its size or modification time differs from its stamp.
+ *
+ * A file modified just before it was hashed could be modified again without
+ * changing its size or (coarse) modification time, so the hashes of such
+ * files are not retained in their stamps; they are rehashed the next time
+ */
+public class ContentHasher extends BaseObject {
+
+  public ContentHasher(Map<String, FileStamp> previousStamps) {
+    mPreviousStamps = (previousStamps == null) ? hashMap() : previousStamps;
+  }
+
+  /**
+   * Determine digest of a single file
+   */
+  public String digestFile(File file) {
+    return hashWithStamp(file.getName(), file);
+  }
+
+  /**
+   * Determine digest of a set of files within a directory
+   */
+  public String digestDirectory(File directory, List<File> relativeFiles) {
+    List<String> paths = arrayList();
+    for (File f : relativeFiles)
+      paths.add(f.toString());
+    paths.sort(null);
+
+    MessageDigest md = Sha256.newDigest();
+    for (String relPath : paths) {
+      String hash = hashWithStamp(relPath, new File(directory, relPath));
+      md.update(relPath.getBytes(StandardCharsets.UTF_8));
+      md.update((byte) 0);
+      md.update(hash.getBytes(StandardCharsets.UTF_8));
+      md.update((byte) '\n');
+    }
+    return Sha256.toHex(md.digest());
+  }
+
+  /**
+   * Get the stamps for the files examined by this hasher, suitable for storing
+   * in the LocalEntry
+   */
+  public Map<String, FileStamp> stamps() {
+    return mStamps;
+  }
+
+  /**
+   * Get the number of files whose contents had to be read (i.e., whose cached
+   * stamps were missing or stale)
+   */
+  public int filesHashed() {
+    return mFilesHashed;
+  }
+
+  private String hashWithStamp(String stampKey, File file) {
+    Files.assertExists(file);
+    long size = file.length();
+    long modified = file.lastModified();
+    FileStamp stamp = mPreviousStamps.get(stampKey);
+    if (stamp != null && stamp.size() == size && stamp.modified() == modified && !stamp.hash().isEmpty()) {
+      mStamps.put(stampKey, stamp);
+      return stamp.hash();
+    }
+    log("...hashing:", stampKey);
+    mFilesHashed++;
+    String hash = Sha256.hashFile(file);
+    boolean racy = System.currentTimeMillis() - modified < RACY_INTERVAL_MS;
+    mStamps.put(stampKey, FileStamp.newBuilder().size(size).modified(modified).hash(racy ? "" : hash).build());
+    return hash;
+  }
+
+  // Files modified more recently than this (before being hashed) have untrusted stamps; this exceeds
+  // the timestamp granularity of common filesystems (e.g. two seconds for FAT)
+  //
+  private static final long RACY_INTERVAL_MS = 3000;
+
+  private final Map<String, FileStamp> mPreviousStamps;
+  private final Map<String, FileStamp> mStamps = new ConcurrentHashMap<>();
+  private int mFilesHashed;
+}
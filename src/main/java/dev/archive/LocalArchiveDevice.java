@@ -0,0 +1,141 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import js.base.SystemCall;
+import js.file.Files;
+import js.webtools.FileArchiveDevice;
+
+/**
+ * A FileArchiveDevice that avoids copying data through the JVM.
+ *
+ * Large files are cloned (copy-on-write, on filesystems that support it) where
+ * possible; otherwise they are copied using FileChannel.transferTo, which lets
+ * the kernel copy the data directly. Temporary files can be pushed by moving
+ * them into the archive, which is instantaneous when the archive is on the same
+ * filesystem.
+ *
+ * Hard links are deliberately not used, since a subsequent in-place
+ * modification of either link would silently modify the other
+ */
+public class LocalArchiveDevice extends FileArchiveDevice {
+
+  public LocalArchiveDevice(File directory) {
+    super(directory);
+    mDirectory = directory;
+  }
+
+  @Override
+  public void push(File source, String name) {
+    Files.assertExists(source);
+    File target = archiveFile(name);
+    File temp = tempFile(target);
+    copy(source, temp);
+    moveIntoPlace(temp, target);
+  }
+
+  @Override
+  public void pull(String name, File destination) {
+    File source = archiveFile(name);
+    Files.assertExists(source);
+    File temp = tempFile(destination);
+    copy(source, temp);
+    moveIntoPlace(temp, destination);
+  }
+
+  /**
+   * Push a file by moving it into the archive, if possible
+   *
+   * @return true if the file was moved; false if it was copied instead (so
+   *         the source file still exists)
+   */
+  public boolean pushByMoving(File source, String name) {
+    Files.assertExists(source);
+    File target = archiveFile(name);
+    try {
+      java.nio.file.Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException e) {
+      // Probably on a different filesystem
+      push(source, name);
+      return false;
+    }
+  }
+
+  private File archiveFile(String name) {
+    File f = new File(mDirectory, name);
+    Files.S.mkdirs(f.getParentFile());
+    return f;
+  }
+
+  private static File tempFile(File target) {
+    Files.S.mkdirs(target.getParentFile());
+    // Construct the temporary file in the same directory, so it can be moved atomically into place
+    return new File(target.getParentFile(), "_SKIP_" + target.getName() + "_" + Thread.currentThread().getId());
+  }
+
+  private static void moveIntoPlace(File temp, File target) {
+    try {
+      java.nio.file.Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  /**
+   * Copy a file, cloning it if possible
+   */
+  public static void copy(File source, File target) {
+    Files.S.deleteFile(target);
+    if (source.length() >= CLONE_MIN_SIZE && cloneFile(source, target))
+      return;
+    try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      long size = in.size();
+      long position = 0;
+      while (position < size)
+        position += in.transferTo(position, size - position, out);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  /**
+   * Attempt to clone a file, sharing its data blocks until either copy is
+   * modified (e.g. btrfs or xfs reflinks, or APFS clones)
+   *
+   * @return true if successful
+   */
+  private static boolean cloneFile(File source, File target) {
+    if (sCloneUnsupported)
+      return false;
+    SystemCall sc = new SystemCall();
+    if (System.getProperty("os.name").toLowerCase().contains("mac"))
+      sc.arg("cp", "-c", source, target);
+    else
+      sc.arg("cp", "--reflink=always", source, target);
+    if (sc.exitCode() == 0)
+      return true;
+    // Assume the filesystem doesn't support clones, and don't try again
+    sCloneUnsupported = true;
+    Files.S.deleteFile(target);
+    return false;
+  }
+
+  // Smaller files are copied directly, rather than incurring the cost of a subprocess
+  //
+  private static final long CLONE_MIN_SIZE = 16L << 20;
+
+  private static volatile boolean sCloneUnsupported;
+
+  private final File mDirectory;
+}
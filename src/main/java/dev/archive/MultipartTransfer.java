@@ -0,0 +1,234 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import dev.Sha256;
+import dev.gen.archive.PartManifest;
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * Transfers a large object as a number of parts, which are pushed or pulled
+ * concurrently.
+ *
+ * An object "xxx" is stored as parts "xxx.part0000", "xxx.part0001", ...,
+ * along with a PartManifest "xxx.parts" that records the object's size and
+ * the SHA-256 of each part. Each part transfer is retried if it fails (or if
+ * a pulled part's hash is incorrect).
+ *
+ * An interrupted push can be resumed by supplying a PartTracker that recorded
+ * the parts already uploaded; an interrupted pull resumes using the verified
+ * parts remaining in the work directory
+ */
+public class MultipartTransfer extends BaseObject {
+
+  public static final String MANIFEST_SUFFIX = ".parts";
+
+  public static String manifestName(String name) {
+    return name + MANIFEST_SUFFIX;
+  }
+
+  public static String partName(String name, int index) {
+    return String.format("%s.part%04d", name, index);
+  }
+
+  public MultipartTransfer(Files files, RemoteStore remote, File workDirectory, long partSize,
+      int threadCount) {
+    checkArgument(partSize > 0, "part size:", partSize);
+    checkArgument(threadCount > 0, "thread count:", threadCount);
+    mFiles = files;
+    mRemote = remote;
+    mWorkDirectory = workDirectory;
+    mPartSize = partSize;
+    mThreadCount = threadCount;
+  }
+
+  public MultipartTransfer withRetries(int retries) {
+    mRetries = retries;
+    return this;
+  }
+
+  /**
+   * Records the parts of an object that have been pushed
+   */
+  public interface PartTracker {
+
+    /**
+     * Get the hash of a part that has already been pushed, or null
+     */
+    String completedPart(int index);
+
+    void partCompleted(int index, int partCount, String hash);
+  }
+
+  /**
+   * Push a file as a number of parts
+   *
+   * @param tracker
+   *          if not null, parts it reports as already pushed (with the same
+   *          hash) are skipped, and it is notified as each part is pushed
+   * @return the number of parts
+   */
+  public int push(File source, String name, PartTracker tracker) {
+    long size = source.length();
+    int count = (int) ((size + mPartSize - 1) / mPartSize);
+    String[] hashes = new String[count];
+    log("...pushing", name, "as", count, "parts");
+
+    runConcurrently(count, (index) -> {
+      File part = partFile(name, index);
+      long offset = index * mPartSize;
+      mFiles.deleteFile(part);
+      copyRange(source, offset, Math.min(mPartSize, size - offset), part);
+      String hash = Sha256.hashFile(part);
+      hashes[index] = hash;
+      if (tracker != null && hash.equals(tracker.completedPart(index)))
+        log("...part already pushed:", partName(name, index));
+      else {
+        withRetry(partName(name, index), () -> mRemote.push(part, partName(name, index)));
+        if (tracker != null)
+          tracker.partCompleted(index, count, hash);
+      }
+      mFiles.deleteFile(part);
+    });
+
+    PartManifest manifest = PartManifest.newBuilder().size(size).partSize(mPartSize)
+        .hashes(arrayList(hashes)).build();
+    File manifestFile = partFile(name, -1);
+    mFiles.writePretty(manifestFile, manifest);
+    withRetry(manifestName(name), () -> mRemote.push(manifestFile, manifestName(name)));
+    mFiles.deleteFile(manifestFile);
+    return count;
+  }
+
+  /**
+   * Pull an object that was pushed as a number of parts, and reassemble it
+   */
+  public void pull(String name, File destination) {
+    File manifestFile = partFile(name, -1);
+    withRetry(manifestName(name), () -> {
+      mFiles.deleteFile(manifestFile);
+      mRemote.pull(manifestName(name), manifestFile);
+    });
+    PartManifest manifest = Files.parseAbstractData(PartManifest.DEFAULT_INSTANCE, manifestFile);
+    mFiles.deleteFile(manifestFile);
+
+    List<String> hashes = manifest.hashes();
+    log("...pulling", name, "as", hashes.size(), "parts");
+
+    runConcurrently(hashes.size(), (index) -> {
+      File part = partFile(name, index);
+      // Keep a part that was pulled before an interruption, if it's intact
+      if (part.exists() && Sha256.hashFile(part).equals(hashes.get(index))) {
+        log("...part already pulled:", partName(name, index));
+        return;
+      }
+      withRetry(partName(name, index), () -> {
+        mFiles.deleteFile(part);
+        mRemote.pull(partName(name, index), part);
+        String hash = Sha256.hashFile(part);
+        checkState(hash.equals(hashes.get(index)), "hash mismatch for part:", partName(name, index));
+      });
+    });
+
+    mFiles.deleteFile(destination);
+    for (int i = 0; i < hashes.size(); i++) {
+      File part = partFile(name, i);
+      copyRange(part, 0, part.length(), destination);
+      mFiles.deleteFile(part);
+    }
+    checkState(destination.length() == manifest.size(), "reassembled object has wrong size:", name);
+  }
+
+  private File partFile(String name, int index) {
+    mFiles.mkdirs(mWorkDirectory);
+    if (index < 0)
+      return new File(mWorkDirectory, manifestName(name));
+    return new File(mWorkDirectory, partName(name, index));
+  }
+
+  /**
+   * Copy a range of bytes from one file, appending them to another
+   */
+  private static void copyRange(File source, long offset, long length, File target) {
+    try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      long position = offset;
+      long remaining = length;
+      while (remaining > 0) {
+        long count = in.transferTo(position, remaining, out);
+        position += count;
+        remaining -= count;
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  private void runConcurrently(int taskCount, IntConsumer task) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(taskCount, mThreadCount)));
+    RuntimeException failure = null;
+    try {
+      List<Future<?>> futures = arrayList();
+      for (int i = 0; i < taskCount; i++) {
+        int index = i;
+        futures.add(executor.submit(() -> task.accept(index)));
+      }
+      for (Future<?> f : futures) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          if (failure == null)
+            failure = asRuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+          throw asRuntimeException(e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    if (failure != null)
+      throw failure;
+  }
+
+  private void withRetry(String description, Runnable operation) {
+    int attempt = 0;
+    while (true) {
+      try {
+        operation.run();
+        return;
+      } catch (RuntimeException e) {
+        attempt++;
+        if (attempt > mRetries)
+          throw e;
+        pr("*** transfer of", description, "failed (attempt " + attempt + "), retrying:", e.getMessage());
+        try {
+          Thread.sleep(RETRY_DELAY_MS * attempt);
+        } catch (InterruptedException e2) {
+          throw asRuntimeException(e2);
+        }
+      }
+    }
+  }
+
+  private static final int RETRY_DELAY_MS = 500;
+
+  private final Files mFiles;
+  private final RemoteStore mRemote;
+  private final File mWorkDirectory;
+  private final long mPartSize;
+  private final int mThreadCount;
+  private int mRetries = 3;
+}
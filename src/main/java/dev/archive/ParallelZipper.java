@@ -0,0 +1,529 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * Writes a set of files within a directory to a zip file, compressing them
+ * using multiple threads.
+ *
+ * Each file is divided into blocks, which are deflated independently on a
+ * ForkJoinPool. Every block except a file's last ends with a sync flush (so it
+ * ends on a byte boundary, without marking the end of the stream), and is
+ * primed with the preceding 32K of the file as a dictionary; so the
+ * concatenated blocks form a single valid deflate stream, whose compression is
+ * close to that of a serial deflate. The per-block CRCs are combined to yield
+ * each file's CRC.
+ *
+ * Blocks are written in order as they complete, with a bounded number in
+ * flight, so memory usage does not depend upon the size of the files. Files
+ * with extensions that indicate already-compressed data are stored rather than
+ * deflated (as are all files, if the compression level is zero). ZIP64
+ * extensions are used where sizes or offsets require them.
+ *
+ * With a single thread, blocks are compressed serially on the calling thread
+ */
+public class ParallelZipper extends BaseObject {
+
+  public static final int BLOCK_SIZE = 1 << 20;
+
+  public static final List<String> DEFAULT_STORE_EXTENSIONS = arrayList("jpg", "jpeg", "png", "gif", "webp",
+      "mp3", "mp4", "m4a", "mov", "mkv", "avi", "zip", "jar", "gz", "tgz", "bz2", "xz", "7z", "npz");
+
+  public ParallelZipper(Files files) {
+    mFiles = (files == null) ? Files.S : files;
+  }
+
+  public ParallelZipper withThreads(int threadCount) {
+    checkArgument(threadCount > 0, "thread count:", threadCount);
+    mThreadCount = threadCount;
+    return this;
+  }
+
+  /**
+   * Compress blocks using an existing pool (which may be shared with other
+   * zippers), instead of constructing one
+   */
+  public ParallelZipper withPool(ForkJoinPool pool) {
+    mPool = pool;
+    mThreadCount = pool.getParallelism();
+    return this;
+  }
+
+  /**
+   * Set the deflate level (1..9), zero to store files without compression, or
+   * -1 for the default
+   */
+  public ParallelZipper withLevel(int level) {
+    checkArgument(level >= -1 && level <= 9, "compression level:", level);
+    mLevel = level;
+    return this;
+  }
+
+  /**
+   * Set the extensions of files that are to be stored without compression; if
+   * null or empty, uses DEFAULT_STORE_EXTENSIONS
+   */
+  public ParallelZipper withStoreExtensions(List<String> extensions) {
+    if (extensions == null || extensions.isEmpty())
+      extensions = DEFAULT_STORE_EXTENSIONS;
+    mStoreExtensions = hashSet();
+    for (String ext : extensions)
+      mStoreExtensions.add(ext.toLowerCase());
+    return this;
+  }
+
+  /**
+   * Write files to a zip file
+   *
+   * @param directory
+   *          directory containing the files
+   * @param relativeFiles
+   *          files to include, relative to the directory; these are also the
+   *          names of the zip entries
+   * @param zipFile
+   *          zip file to write
+   */
+  public void zip(File directory, List<File> relativeFiles, File zipFile) {
+    mFiles.deleteFile(zipFile);
+    if (mStoreExtensions == null)
+      withStoreExtensions(null);
+
+    BlockCursor cursor = new BlockCursor(directory, relativeFiles);
+    List<ZipItem> items = arrayList();
+    ForkJoinPool pool = null;
+    if (mPool != null)
+      pool = mPool;
+    else if (mThreadCount > 1)
+      pool = new ForkJoinPool(mThreadCount);
+    try (FileChannel out = FileChannel.open(zipFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ArrayDeque<ForkJoinTask<Block>> inFlight = new ArrayDeque<>();
+      int maxInFlight = mThreadCount * 2;
+      while (cursor.hasNext() || !inFlight.isEmpty()) {
+        Block block;
+        if (pool == null) {
+          block = compress(cursor.next());
+        } else {
+          while (cursor.hasNext() && inFlight.size() < maxInFlight) {
+            Block b = cursor.next();
+            inFlight.add(pool.submit(() -> compress(b)));
+          }
+          block = inFlight.remove().join();
+        }
+        ZipItem item = block.item;
+        if (block.offset == 0) {
+          writeLocalHeader(out, item);
+          items.add(item);
+        }
+        out.write(ByteBuffer.wrap(block.output, 0, block.outputLength));
+        // Don't retain the output (which, for a stored file, is the block's entire content)
+        block.output = null;
+        item.compressedSize += block.outputLength;
+        item.crc = (block.offset == 0) ? block.crc : crc32Combine(item.crc, block.crc, block.length);
+        if (block.last)
+          patchLocalHeader(out, item);
+      }
+      writeCentralDirectory(out, items);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    } finally {
+      if (pool != null && pool != mPool)
+        pool.shutdownNow();
+    }
+    checkState(zipFile.exists(), "failed to create: " + zipFile);
+  }
+
+  // ------------------------------------------------------------------
+  // Compressing blocks
+  // ------------------------------------------------------------------
+
+  private static final int DICTIONARY_SIZE = 1 << 15;
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+  private static final class ZipItem {
+
+    ZipItem(String name, File file) {
+      this.name = name.getBytes(StandardCharsets.UTF_8);
+      this.file = file;
+      size = file.length();
+      dosTime = dosTime(file.lastModified());
+      // We don't know the compressed size in advance; assume deflate won't expand the data much
+      zip64 = size >= 0xF0000000L;
+    }
+
+    final byte[] name;
+    final File file;
+    final long size;
+    final long dosTime;
+    final boolean zip64;
+    boolean stored;
+    long headerOffset;
+    long compressedSize;
+    long crc;
+  }
+
+  private static final class Block {
+
+    Block(ZipItem item, long offset, int length, boolean last) {
+      this.item = item;
+      this.offset = offset;
+      this.length = length;
+      this.last = last;
+    }
+
+    final ZipItem item;
+    final long offset;
+    final int length;
+    final boolean last;
+    byte[] output;
+    int outputLength;
+    long crc;
+  }
+
+  /**
+   * Produces the blocks of the files in order, constructing each one only when
+   * it is needed, so the number of blocks in memory doesn't depend upon the
+   * size of the files
+   */
+  private final class BlockCursor {
+
+    BlockCursor(File directory, List<File> relativeFiles) {
+      mDirectory = directory;
+      mRelativeFiles = relativeFiles;
+    }
+
+    boolean hasNext() {
+      return mItem != null || mFileIndex < mRelativeFiles.size();
+    }
+
+    Block next() {
+      if (mItem == null) {
+        String relPath = mRelativeFiles.get(mFileIndex++).toString();
+        mItem = new ZipItem(relPath, new File(mDirectory, relPath));
+        mItem.stored = mLevel == 0 || mStoreExtensions.contains(Files.getExtension(relPath).toLowerCase());
+        mOffset = 0;
+      }
+      int length = (int) Math.min(BLOCK_SIZE, mItem.size - mOffset);
+      boolean last = mOffset + length == mItem.size;
+      Block block = new Block(mItem, mOffset, length, last);
+      mOffset += length;
+      if (last)
+        mItem = null;
+      return block;
+    }
+
+    private final File mDirectory;
+    private final List<File> mRelativeFiles;
+    private int mFileIndex;
+    private ZipItem mItem;
+    private long mOffset;
+  }
+
+  private Block compress(Block block) {
+    ZipItem item = block.item;
+    int dictLength = item.stored ? 0 : (int) Math.min(DICTIONARY_SIZE, block.offset);
+    byte[] input = new byte[dictLength + block.length];
+    readFully(item.file, block.offset - dictLength, input);
+
+    CRC32 crc = new CRC32();
+    crc.update(input, dictLength, block.length);
+    block.crc = crc.getValue();
+
+    if (item.stored) {
+      block.output = input;
+      block.outputLength = input.length;
+      return block;
+    }
+
+    Deflater deflater = new Deflater(mLevel, true);
+    try {
+      if (dictLength > 0)
+        deflater.setDictionary(input, 0, dictLength);
+      deflater.setInput(input, dictLength, block.length);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(block.length / 2 + 64);
+      byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+      if (block.last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          int count = deflater.deflate(buffer);
+          output.write(buffer, 0, count);
+        }
+      } else {
+        while (true) {
+          int count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          output.write(buffer, 0, count);
+          // If the buffer was filled, there may be more output pending
+          if (count < buffer.length)
+            break;
+        }
+      }
+      block.output = output.toByteArray();
+      block.outputLength = block.output.length;
+    } finally {
+      deflater.end();
+    }
+    return block;
+  }
+
+  private static void readFully(File file, long position, byte[] target) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.wrap(target);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0)
+          throw new EOFException("unexpected end of file: " + file);
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  // ------------------------------------------------------------------
+  // Zip file structure
+  // ------------------------------------------------------------------
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  private static final int VERSION_DEFAULT = 20;
+  private static final int VERSION_ZIP64 = 45;
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int METHOD_STORED = 0;
+  private static final int METHOD_DEFLATED = 8;
+  private static final long MAX_32 = 0xFFFFFFFFL;
+  private static final int MAX_16 = 0xFFFF;
+
+  private static ByteBuffer newBuffer(int capacity) {
+    return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      out.write(buffer);
+  }
+
+  private static int method(ZipItem item) {
+    return item.stored ? METHOD_STORED : METHOD_DEFLATED;
+  }
+
+  private void writeLocalHeader(FileChannel out, ZipItem item) throws IOException {
+    item.headerOffset = out.position();
+    ByteBuffer b = newBuffer(30 + item.name.length + 20);
+    b.putInt(LOCAL_HEADER_SIGNATURE);
+    b.putShort((short) (item.zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+    b.putShort((short) FLAG_UTF8);
+    b.putShort((short) method(item));
+    b.putInt((int) item.dosTime);
+    // The CRC and sizes are filled in once the data has been written
+    b.putInt(0);
+    b.putInt(item.zip64 ? (int) MAX_32 : 0);
+    b.putInt(item.zip64 ? (int) MAX_32 : 0);
+    b.putShort((short) item.name.length);
+    b.putShort((short) (item.zip64 ? 20 : 0));
+    b.put(item.name);
+    if (item.zip64) {
+      b.putShort((short) ZIP64_EXTRA_ID);
+      b.putShort((short) 16);
+      b.putLong(0);
+      b.putLong(0);
+    }
+    write(out, b);
+  }
+
+  private void patchLocalHeader(FileChannel out, ZipItem item) throws IOException {
+    checkState(item.zip64 || item.compressedSize < MAX_32, "compressed size unexpectedly large:", item.file);
+    long end = out.position();
+    ByteBuffer b = newBuffer(12);
+    b.putInt((int) item.crc);
+    if (!item.zip64) {
+      b.putInt((int) item.compressedSize);
+      b.putInt((int) item.size);
+    }
+    out.position(item.headerOffset + 14);
+    write(out, b);
+    if (item.zip64) {
+      b = newBuffer(16);
+      b.putLong(item.size);
+      b.putLong(item.compressedSize);
+      out.position(item.headerOffset + 30 + item.name.length + 4);
+      write(out, b);
+    }
+    out.position(end);
+  }
+
+  private void writeCentralDirectory(FileChannel out, List<ZipItem> items) throws IOException {
+    long directoryOffset = out.position();
+    for (ZipItem item : items) {
+      boolean sizes64 = item.size >= MAX_32 || item.compressedSize >= MAX_32;
+      boolean offset64 = item.headerOffset >= MAX_32;
+      int extraLength = (sizes64 || offset64) ? 4 + (sizes64 ? 16 : 0) + (offset64 ? 8 : 0) : 0;
+      boolean zip64 = item.zip64 || extraLength > 0;
+
+      ByteBuffer b = newBuffer(46 + item.name.length + extraLength);
+      b.putInt(CENTRAL_HEADER_SIGNATURE);
+      b.putShort((short) VERSION_ZIP64);
+      b.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+      b.putShort((short) FLAG_UTF8);
+      b.putShort((short) method(item));
+      b.putInt((int) item.dosTime);
+      b.putInt((int) item.crc);
+      b.putInt(sizes64 ? (int) MAX_32 : (int) item.compressedSize);
+      b.putInt(sizes64 ? (int) MAX_32 : (int) item.size);
+      b.putShort((short) item.name.length);
+      b.putShort((short) extraLength);
+      b.putShort((short) 0); // comment length
+      b.putShort((short) 0); // disk number
+      b.putShort((short) 0); // internal attributes
+      b.putInt(0); // external attributes
+      b.putInt(offset64 ? (int) MAX_32 : (int) item.headerOffset);
+      b.put(item.name);
+      if (extraLength > 0) {
+        b.putShort((short) ZIP64_EXTRA_ID);
+        b.putShort((short) (extraLength - 4));
+        if (sizes64) {
+          b.putLong(item.size);
+          b.putLong(item.compressedSize);
+        }
+        if (offset64)
+          b.putLong(item.headerOffset);
+      }
+      write(out, b);
+    }
+
+    long directoryEnd = out.position();
+    long directorySize = directoryEnd - directoryOffset;
+    int count = items.size();
+    boolean zip64 = count >= MAX_16 || directorySize >= MAX_32 || directoryOffset >= MAX_32;
+    if (zip64) {
+      ByteBuffer b = newBuffer(56 + 20);
+      b.putInt(ZIP64_END_SIGNATURE);
+      b.putLong(44); // size of remainder of record
+      b.putShort((short) VERSION_ZIP64);
+      b.putShort((short) VERSION_ZIP64);
+      b.putInt(0); // this disk
+      b.putInt(0); // disk with central directory
+      b.putLong(count);
+      b.putLong(count);
+      b.putLong(directorySize);
+      b.putLong(directoryOffset);
+
+      b.putInt(ZIP64_LOCATOR_SIGNATURE);
+      b.putInt(0);
+      b.putLong(directoryEnd);
+      b.putInt(1); // total disks
+      write(out, b);
+    }
+
+    ByteBuffer b = newBuffer(22);
+    b.putInt(END_SIGNATURE);
+    b.putShort((short) 0);
+    b.putShort((short) 0);
+    b.putShort((short) Math.min(count, MAX_16));
+    b.putShort((short) Math.min(count, MAX_16));
+    b.putInt((int) Math.min(directorySize, MAX_32));
+    b.putInt((int) Math.min(directoryOffset, MAX_32));
+    b.putShort((short) 0); // comment length
+    write(out, b);
+  }
+
+  /**
+   * Convert a Java time to MS-DOS date (high 16 bits) and time (low 16 bits)
+   */
+  private static long dosTime(long millis) {
+    LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    if (t.getYear() < 1980)
+      return (1 << 21) | (1 << 16);
+    return ((t.getYear() - 1980) << 25 | t.getMonthValue() << 21 | t.getDayOfMonth() << 16
+        | t.getHour() << 11 | t.getMinute() << 5 | t.getSecond() >> 1) & MAX_32;
+  }
+
+  // ------------------------------------------------------------------
+  // Combining CRCs (as in zlib's crc32_combine)
+  // ------------------------------------------------------------------
+
+  /**
+   * Determine the CRC of the concatenation of two byte sequences, given their
+   * CRCs and the length of the second
+   */
+  static long crc32Combine(long crc1, long crc2, long length2) {
+    if (length2 <= 0)
+      return crc1;
+
+    long[] even = new long[32];
+    long[] odd = new long[32];
+
+    // Operator for one zero bit
+    odd[0] = 0xedb88320L;
+    long row = 1;
+    for (int n = 1; n < 32; n++) {
+      odd[n] = row;
+      row <<= 1;
+    }
+    gf2MatrixSquare(even, odd); // two zero bits
+    gf2MatrixSquare(odd, even); // four zero bits
+
+    // Apply len2 zeros to crc1
+    do {
+      gf2MatrixSquare(even, odd);
+      if ((length2 & 1) != 0)
+        crc1 = gf2MatrixTimes(even, crc1);
+      length2 >>= 1;
+      if (length2 == 0)
+        break;
+      gf2MatrixSquare(odd, even);
+      if ((length2 & 1) != 0)
+        crc1 = gf2MatrixTimes(odd, crc1);
+      length2 >>= 1;
+    } while (length2 != 0);
+    return (crc1 ^ crc2) & MAX_32;
+  }
+
+  private static long gf2MatrixTimes(long[] matrix, long vector) {
+    long sum = 0;
+    int i = 0;
+    while (vector != 0) {
+      if ((vector & 1) != 0)
+        sum ^= matrix[i];
+      vector >>= 1;
+      i++;
+    }
+    return sum;
+  }
+
+  private static void gf2MatrixSquare(long[] square, long[] matrix) {
+    for (int n = 0; n < 32; n++)
+      square[n] = gf2MatrixTimes(matrix, matrix[n]);
+  }
+
+  private final Files mFiles;
+  private int mThreadCount = Runtime.getRuntime().availableProcessors();
+  private ForkJoinPool mPool;
+  private int mLevel = Deflater.DEFAULT_COMPRESSION;
+  private Set<String> mStoreExtensions;
+}
@@ -0,0 +1,76 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import dev.gen.archive.ArchiveEntry;
+import js.file.Files;
+
+/**
+ * Indexes the entries of an archive registry by path, so that the key for a
+ * path can be found without examining every entry.
+ *
+ * The index must be informed of every change to the registry's entries
+ */
+public class RegistryIndex {
+
+  public RegistryIndex(Map<String, ArchiveEntry> entries) {
+    for (Map.Entry<String, ArchiveEntry> ent : entries.entrySet())
+      put(ent.getKey(), ent.getValue());
+  }
+
+  /**
+   * Add (or replace) an entry
+   */
+  public void put(String key, ArchiveEntry entry) {
+    remove(key);
+    if (Files.empty(entry.path()))
+      return;
+    String path = entry.path().toString();
+    mPathForKey.put(key, path);
+    add(mKeysForPath, path, key);
+  }
+
+  public void remove(String key) {
+    String path = mPathForKey.remove(key);
+    if (path == null)
+      return;
+    delete(mKeysForPath, path, key);
+  }
+
+  /**
+   * Get the keys of entries with a particular path, in sorted order
+   */
+  public List<String> keysForPath(File path) {
+    return keys(mKeysForPath, path.toString());
+  }
+
+  private static void add(Map<String, Set<String>> map, String name, String key) {
+    map.computeIfAbsent(name, (k) -> new TreeSet<>()).add(key);
+  }
+
+  private static void delete(Map<String, Set<String>> map, String name, String key) {
+    Set<String> keys = map.get(name);
+    if (keys == null)
+      return;
+    keys.remove(key);
+    if (keys.isEmpty())
+      map.remove(name);
+  }
+
+  private static List<String> keys(Map<String, Set<String>> map, String name) {
+    List<String> result = arrayList();
+    Set<String> keys = map.get(name);
+    if (keys != null)
+      result.addAll(keys);
+    return result;
+  }
+
+  private final Map<String, String> mPathForKey = hashMap();
+  private final Map<String, Set<String>> mKeysForPath = hashMap();
+}
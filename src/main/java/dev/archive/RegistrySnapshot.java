@@ -0,0 +1,229 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import dev.Sha256;
+import js.data.AbstractData;
+import js.file.Files;
+import js.json.JSList;
+import js.json.JSMap;
+
+/**
+ * Binary snapshots of registries, which are faster to load than their JSON
+ * files.
+ *
+ * The JSON file remains the source of truth. A snapshot records the SHA-256
+ * digest of the JSON file it was made from, and is only used if the file's
+ * contents still have that digest (hashing the file is much cheaper than
+ * parsing it); it also has a format version and a checksum, and is ignored
+ * (and rewritten) if either is incorrect.
+ *
+ * The snapshot is a binary encoding of the registry's JSON representation, so
+ * it needn't change when fields are added to the registry classes
+ */
+public final class RegistrySnapshot {
+
+  /**
+   * Read a registry, from its snapshot if it's valid, otherwise from its JSON
+   * file (and write a new snapshot)
+   *
+   * @return registry, or null if the JSON file doesn't exist
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends AbstractData> T read(Files files, T defaultInstance, File jsonFile,
+      File snapshotFile) {
+    if (!jsonFile.exists())
+      return null;
+    JSMap json = readSnapshot(jsonFile, snapshotFile);
+    if (json != null)
+      return (T) defaultInstance.parse(json);
+    T registry = Files.parseAbstractData(defaultInstance, jsonFile);
+    write(files, registry, jsonFile, snapshotFile);
+    return registry;
+  }
+
+  /**
+   * Write a snapshot of a registry, which has just been written to its JSON
+   * file
+   */
+  public static void write(Files files, AbstractData registry, File jsonFile, File snapshotFile) {
+    if (files.dryRun())
+      return;
+    try {
+      ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+      DataOutputStream payload = new DataOutputStream(payloadBytes);
+      writeValue(payload, registry.toJson());
+      payload.flush();
+      byte[] bytes = payloadBytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+
+      File temp = new File(snapshotFile.getParentFile(), "_SKIP_" + snapshotFile.getName());
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(Sha256.hashFile(jsonFile));
+        out.writeInt(bytes.length);
+        out.writeLong(crc.getValue());
+        out.write(bytes);
+      }
+      java.nio.file.Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  /**
+   * Read the JSON map from a snapshot, if it is valid and matches the JSON
+   * file; otherwise, return null
+   */
+  private static JSMap readSnapshot(File jsonFile, File snapshotFile) {
+    if (!snapshotFile.exists())
+      return null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+        return null;
+      if (!in.readUTF().equals(Sha256.hashFile(jsonFile)))
+        return null;
+      int length = in.readInt();
+      long expectedCrc = in.readLong();
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      if (crc.getValue() != expectedCrc) {
+        pr("*** checksum of registry snapshot is incorrect:", snapshotFile);
+        return null;
+      }
+      Object value = readValue(new DataInputStream(new ByteArrayInputStream(bytes)));
+      return (value instanceof JSMap) ? (JSMap) value : null;
+    } catch (IOException | RuntimeException e) {
+      pr("*** failed to read registry snapshot:", snapshotFile, INDENT, e);
+      return null;
+    }
+  }
+
+  // ------------------------------------------------------------------
+  // Encoding JSON values
+  // ------------------------------------------------------------------
+
+  private static final int MAGIC = 0x44415253; // "DARS"
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int T_NULL = 0;
+  private static final int T_FALSE = 1;
+  private static final int T_TRUE = 2;
+  private static final int T_INT = 3;
+  private static final int T_LONG = 4;
+  private static final int T_DOUBLE = 5;
+  private static final int T_STRING = 6;
+  private static final int T_MAP = 7;
+  private static final int T_LIST = 8;
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null)
+      out.writeByte(T_NULL);
+    else if (value instanceof Boolean)
+      out.writeByte(((Boolean) value) ? T_TRUE : T_FALSE);
+    else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      out.writeByte(T_INT);
+      out.writeInt(((Number) value).intValue());
+    } else if (value instanceof Long) {
+      out.writeByte(T_LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Number) {
+      out.writeByte(T_DOUBLE);
+      out.writeDouble(((Number) value).doubleValue());
+    } else if (value instanceof String) {
+      out.writeByte(T_STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof JSMap) {
+      Map<String, Object> map = ((JSMap) value).wrappedMap();
+      out.writeByte(T_MAP);
+      out.writeInt(map.size());
+      for (Map.Entry<String, Object> ent : map.entrySet()) {
+        writeString(out, ent.getKey());
+        writeValue(out, ent.getValue());
+      }
+    } else if (value instanceof JSList) {
+      JSList list = (JSList) value;
+      out.writeByte(T_LIST);
+      out.writeInt(list.wrappedList().size());
+      for (Object x : list.wrappedList())
+        writeValue(out, x);
+    } else
+      throw notSupported("can't encode value of type:", value.getClass());
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    int type = in.readByte();
+    switch (type) {
+    case T_NULL:
+      return null;
+    case T_FALSE:
+      return false;
+    case T_TRUE:
+      return true;
+    case T_INT:
+      return in.readInt();
+    case T_LONG:
+      return in.readLong();
+    case T_DOUBLE:
+      return in.readDouble();
+    case T_STRING:
+      return readString(in);
+    case T_MAP: {
+      int size = in.readInt();
+      JSMap map = new JSMap();
+      for (int i = 0; i < size; i++) {
+        String key = readString(in);
+        map.putUnsafe(key, readValue(in));
+      }
+      return map;
+    }
+    case T_LIST: {
+      int size = in.readInt();
+      JSList list = new JSList();
+      for (int i = 0; i < size; i++)
+        list.add(readValue(in));
+      return list;
+    }
+    default:
+      throw new IOException("unexpected type: " + type);
+    }
+  }
+
+  // DataOutputStream.writeUTF is limited to 64K bytes, so write the length as an int
+  //
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private RegistrySnapshot() {
+  }
+}
@@ -0,0 +1,196 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import js.base.BaseObject;
+import js.file.Files;
+import js.json.JSList;
+import js.json.JSMap;
+import js.webtools.ArchiveDevice;
+import js.webtools.gen.CloudFileEntry;
+
+/**
+ * Wraps an ArchiveDevice, optionally simulating the latency and (per-stream)
+ * bandwidth of a remote device so that the concurrent transfer code can be
+ * exercised against a local FileArchiveDevice
+ */
+public class RemoteStore extends BaseObject {
+
+  /**
+   * @param files
+   *          used to write or delete local files, so the store honors the
+   *          caller's dry-run setting
+   */
+  public RemoteStore(Files files, ArchiveDevice device) {
+    mFiles = files;
+    mDevice = device;
+  }
+
+  /**
+   * Add an artificial delay to every device operation
+   */
+  public RemoteStore withLatency(int latencyMs) {
+    checkArgument(latencyMs >= 0, "latency:", latencyMs);
+    mLatencyMs = latencyMs;
+    return this;
+  }
+
+  /**
+   * Limit the simulated transfer rate of each push or pull
+   */
+  public RemoteStore withBandwidth(long bytesPerSecond) {
+    checkArgument(bytesPerSecond >= 0, "bandwidth:", bytesPerSecond);
+    mBytesPerSecond = bytesPerSecond;
+    return this;
+  }
+
+  /**
+   * Answer existence queries from a single listing of the device's objects,
+   * instead of querying the device for each object. The listing is cached in a
+   * file, and reused by subsequent runs if it is not older than a time limit.
+   *
+   * Objects are never modified once stored, and every object pushed through
+   * this store is added to the listing; so the listing can only be stale with
+   * respect to objects pushed by other clients within the time limit
+   *
+   * @param deviceId
+   *          identifies the device; a cached listing of a different device is
+   *          ignored
+   */
+  public RemoteStore withListing(File cacheFile, String deviceId, long maxAgeMs) {
+    checkArgument(maxAgeMs >= 0, "max age:", maxAgeMs);
+    mListingCacheFile = cacheFile;
+    mDeviceId = deviceId;
+    mListingMaxAgeMs = maxAgeMs;
+    return this;
+  }
+
+  public ArchiveDevice device() {
+    return mDevice;
+  }
+
+  public boolean fileExists(String name) {
+    if (mListingCacheFile != null)
+      return listed(name);
+    simulateLatency();
+    return mDevice.fileExists(name);
+  }
+
+  public void push(File source, String name) {
+    simulateLatency();
+    simulateTransfer(source.length());
+    mDevice.push(source, name);
+    addToListing(name);
+  }
+
+  /**
+   * Push a temporary file, which is deleted afterward. A LocalArchiveDevice
+   * moves the file into place rather than copying it
+   */
+  public void pushTemporary(File source, String name) {
+    if (mDevice instanceof LocalArchiveDevice) {
+      simulateLatency();
+      simulateTransfer(source.length());
+      if (!((LocalArchiveDevice) mDevice).pushByMoving(source, name))
+        mFiles.deleteFile(source);
+      addToListing(name);
+    } else {
+      push(source, name);
+      mFiles.deleteFile(source);
+    }
+  }
+
+  public void pull(String name, File destination) {
+    simulateLatency();
+    mDevice.pull(name, destination);
+    simulateTransfer(destination.length());
+  }
+
+  /**
+   * Write the listing to its cache file, if it has been modified
+   */
+  public synchronized void flushListing() {
+    if (!mListingModified)
+      return;
+    mListingModified = false;
+    JSMap m = map();
+    m.put("device", mDeviceId);
+    m.put("time", mListingTime);
+    List<String> names = arrayList();
+    names.addAll(mListing);
+    m.put("names", JSList.with(names));
+    mFiles.writePretty(mListingCacheFile, m);
+  }
+
+  private synchronized boolean listed(String name) {
+    return listing().contains(name);
+  }
+
+  private Set<String> listing() {
+    if (mListing != null)
+      return mListing;
+
+    JSMap m = JSMap.fromFileIfExists(mListingCacheFile);
+    long time = m.opt("time", 0L);
+    long age = System.currentTimeMillis() - time;
+    if (m.opt("device", "").equals(mDeviceId) && age >= 0 && age <= mListingMaxAgeMs) {
+      log("...using cached listing, age (ms):", age);
+      mListing = new TreeSet<>(m.optJSList("names").asStrings());
+      mListingTime = time;
+      return mListing;
+    }
+
+    log("...listing objects in archive");
+    simulateLatency();
+    mListingTime = System.currentTimeMillis();
+    mListing = new TreeSet<>();
+    for (CloudFileEntry ent : mDevice.listFiles(""))
+      mListing.add(ent.name());
+    log("...objects listed:", mListing.size());
+    mListingModified = true;
+    return mListing;
+  }
+
+  private synchronized void addToListing(String name) {
+    if (mListing == null)
+      return;
+    mListing.add(name);
+    mListingModified = true;
+  }
+
+  private void simulateLatency() {
+    sleep(mLatencyMs);
+  }
+
+  private void simulateTransfer(long byteCount) {
+    if (mBytesPerSecond == 0)
+      return;
+    sleep((byteCount * 1000) / mBytesPerSecond);
+  }
+
+  private static void sleep(long ms) {
+    if (ms == 0)
+      return;
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      throw asRuntimeException(e);
+    }
+  }
+
+  private final Files mFiles;
+  private final ArchiveDevice mDevice;
+  private int mLatencyMs;
+  private long mBytesPerSecond;
+  private File mListingCacheFile;
+  private String mDeviceId;
+  private long mListingMaxAgeMs;
+  private Set<String> mListing;
+  private long mListingTime;
+  private boolean mListingModified;
+}
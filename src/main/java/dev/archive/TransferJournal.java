@@ -0,0 +1,143 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import dev.gen.archive.Transfer;
+import dev.gen.archive.TransferLog;
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * A persistent record of the transfers that are in progress.
+ *
+ * A transfer is added to the journal before it starts, and removed once the
+ * registries reflect its result. If the program is interrupted, the journal
+ * identifies the objects whose transfers didn't complete: pushes can resume
+ * (skipping any parts that were already uploaded), and objects whose local
+ * copies were being modified by a pull are known to be incomplete.
+ *
+ * The journal file is rewritten whenever it changes
+ */
+public class TransferJournal extends BaseObject {
+
+  public TransferJournal(Files files, File file) {
+    mFiles = files;
+    mFile = file;
+    TransferLog log = Files.parseAbstractDataOpt(TransferLog.DEFAULT_INSTANCE, file);
+    mTransfers = hashMap();
+    mTransfers.putAll(log.transfers());
+  }
+
+  /**
+   * Get the transfers that were interrupted, keyed by object
+   */
+  public synchronized Map<String, Transfer> interrupted() {
+    Map<String, Transfer> result = hashMap();
+    result.putAll(mTransfers);
+    return result;
+  }
+
+  /**
+   * Get the record of an interrupted transfer, if it is the same transfer
+   * (i.e. same direction, version, name, and digest); else null. The journal
+   * is not modified
+   */
+  public synchronized Transfer interrupted(String key, boolean push, int version, String name, String digest) {
+    Transfer existing = mTransfers.get(key);
+    if (existing != null && existing.push() == push && existing.version() == version
+        && existing.name().equals(name) && existing.digest().equals(digest))
+      return existing;
+    return null;
+  }
+
+  /**
+   * Record the start of a transfer. If the same transfer was interrupted
+   * previously, its record (including any parts already transferred) is
+   * retained
+   *
+   * @return the interrupted transfer that is being resumed, or null
+   */
+  public synchronized Transfer begin(String key, boolean push, int version, String name, String digest) {
+    Transfer existing = interrupted(key, push, version, name, digest);
+    if (existing != null) {
+      log("...resuming interrupted transfer:", key, INDENT, existing);
+      return existing;
+    }
+    mTransfers.put(key, Transfer.newBuilder().push(push).version(version).name(name).digest(digest).build());
+    flush();
+    return null;
+  }
+
+  /**
+   * Get a PartTracker for a transfer that has begun
+   */
+  public MultipartTransfer.PartTracker partTracker(String key) {
+    return new MultipartTransfer.PartTracker() {
+      @Override
+      public String completedPart(int index) {
+        return completedPartHash(key, index);
+      }
+
+      @Override
+      public void partCompleted(int index, int partCount, String hash) {
+        recordPart(key, index, partCount, hash);
+      }
+    };
+  }
+
+  /**
+   * Remove a transfer from the journal
+   */
+  public synchronized void end(String key) {
+    if (mTransfers.remove(key) != null)
+      flush();
+  }
+
+  private synchronized String completedPartHash(String key, int index) {
+    Transfer t = mTransfers.get(key);
+    if (t == null || index >= t.partHashes().size())
+      return null;
+    return nullIfEmpty(t.partHashes().get(index));
+  }
+
+  private synchronized void recordPart(String key, int index, int partCount, String hash) {
+    Transfer t = mTransfers.get(key);
+    checkState(t != null, "no transfer in progress:", key);
+    List<String> hashes = arrayList();
+    hashes.addAll(t.partHashes());
+    if (hashes.size() != partCount) {
+      hashes.clear();
+      for (int i = 0; i < partCount; i++)
+        hashes.add("");
+    }
+    hashes.set(index, hash);
+    mTransfers.put(key, t.toBuilder().partHashes(hashes).build());
+    flush();
+  }
+
+  private static String nullIfEmpty(String s) {
+    return (s == null || s.isEmpty()) ? null : s;
+  }
+
+  private void flush() {
+    if (mFiles.dryRun())
+      return;
+    if (mTransfers.isEmpty())
+      mFiles.deleteFile(mFile);
+    else {
+      TransferLog.Builder b = TransferLog.newBuilder();
+      Map<String, Transfer> m = hashMap();
+      m.putAll(mTransfers);
+      b.transfers(m);
+      mFiles.writePretty(mFile, b.build());
+    }
+  }
+
+  private final Files mFiles;
+  private final File mFile;
+  private final Map<String, Transfer> mTransfers;
+}
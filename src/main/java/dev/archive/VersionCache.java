@@ -0,0 +1,131 @@
+package dev.archive;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * A machine-wide cache of versioned archive objects, shared by all the
+ * projects (and clones of projects) on the machine.
+ *
+ * Objects are keyed by their name within the archive and their content
+ * digest, so different archives storing objects with the same name don't
+ * collide. The cache has a maximum size; when it is exceeded, the least
+ * recently used objects are evicted (a file's modification time records when
+ * it was last used). Files are written to a temporary file and moved into
+ * place, so several processes can safely use the cache at once
+ */
+public class VersionCache extends BaseObject {
+
+  /**
+   * @param maxBytes
+   *          maximum size of the cache; if zero, the cache is disabled
+   */
+  public VersionCache(Files files, File directory, long maxBytes) {
+    checkArgument(maxBytes >= 0, "max bytes:", maxBytes);
+    mFiles = files;
+    mDirectory = directory;
+    mMaxBytes = maxBytes;
+  }
+
+  /**
+   * Copy an object from the cache, if it's there
+   *
+   * @return true if the object was found in the cache
+   */
+  public boolean get(String name, String digest, File destination) {
+    if (!enabled(digest))
+      return false;
+    File cached = cacheFile(name, digest);
+    if (!cached.exists()) {
+      mMisses.incrementAndGet();
+      return false;
+    }
+    log("...found in cache:", name);
+    LocalArchiveDevice.copy(cached, destination);
+    cached.setLastModified(System.currentTimeMillis());
+    mHits.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Add an object to the cache (if it isn't already there)
+   */
+  public void put(String name, String digest, File source) {
+    if (!enabled(digest) || mFiles.dryRun())
+      return;
+    File cached = cacheFile(name, digest);
+    if (cached.exists())
+      return;
+    if (source.length() > mMaxBytes)
+      return;
+    mFiles.mkdirs(mDirectory);
+    File temp = new File(mDirectory,
+        "_SKIP_" + cached.getName() + "_" + sTempCounter.incrementAndGet() + "_" + ProcessHandle.current().pid());
+    LocalArchiveDevice.copy(source, temp);
+    try {
+      java.nio.file.Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    evict();
+  }
+
+  public int hits() {
+    return mHits.get();
+  }
+
+  public int misses() {
+    return mMisses.get();
+  }
+
+  private boolean enabled(String digest) {
+    // We can't identify an object's content if it has no digest (i.e., it was pushed before digests were recorded)
+    return mMaxBytes > 0 && !nullOrEmpty(digest);
+  }
+
+  private File cacheFile(String name, String digest) {
+    return new File(mDirectory, digest + "_" + name);
+  }
+
+  /**
+   * Delete the least recently used objects until the cache is within its size
+   * limit
+   */
+  private synchronized void evict() {
+    List<File> cached = arrayList();
+    long totalBytes = 0;
+    for (File f : Files.files(mDirectory)) {
+      if (f.getName().startsWith("_SKIP_"))
+        continue;
+      cached.add(f);
+      totalBytes += f.length();
+    }
+    if (totalBytes <= mMaxBytes)
+      return;
+    cached.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+    for (File f : cached) {
+      if (totalBytes <= mMaxBytes)
+        break;
+      log("...evicting from cache:", f.getName());
+      totalBytes -= f.length();
+      mFiles.deleteFile(f);
+    }
+  }
+
+  private static final AtomicInteger sTempCounter = new AtomicInteger();
+
+  private final Files mFiles;
+  private final File mDirectory;
+  private final long mMaxBytes;
+  private final AtomicInteger mHits = new AtomicInteger();
+  private final AtomicInteger mMisses = new AtomicInteger();
+}
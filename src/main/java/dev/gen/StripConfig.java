@@ -47,6 +47,42 @@ public class StripConfig implements AbstractData {
     return mExcludeExtensions;
   }
 
+  public int threads() {
+    return mThreads;
+  }
+
+  public boolean noCache() {
+    return mNoCache;
+  }
+
+  public boolean gitObjects() {
+    return mGitObjects;
+  }
+
+  public File dfaStore() {
+    return mDfaStore;
+  }
+
+  public int editsMemoryMb() {
+    return mEditsMemoryMb;
+  }
+
+  public boolean watch() {
+    return mWatch;
+  }
+
+  public File targetDir() {
+    return mTargetDir;
+  }
+
+  public boolean noPrefilter() {
+    return mNoPrefilter;
+  }
+
+  public int cacheLimitMb() {
+    return mCacheLimitMb;
+  }
+
   @Override
   public Builder toBuilder() {
     return new Builder(this);
@@ -62,6 +98,15 @@ public class StripConfig implements AbstractData {
   protected static final String _7 = "skip_pattern_search";
   protected static final String _8 = "include_symlinks";
   protected static final String _9 = "exclude_extensions";
+  protected static final String _10 = "threads";
+  protected static final String _11 = "no_cache";
+  protected static final String _12 = "git_objects";
+  protected static final String _13 = "dfa_store";
+  protected static final String _14 = "edits_memory_mb";
+  protected static final String _15 = "watch";
+  protected static final String _16 = "target_dir";
+  protected static final String _17 = "no_prefilter";
+  protected static final String _18 = "cache_limit_mb";
 
   @Override
   public String toString() {
@@ -81,6 +126,15 @@ public class StripConfig implements AbstractData {
     m.putUnsafe(_7, mSkipPatternSearch);
     m.putUnsafe(_8, mIncludeSymlinks);
     m.putUnsafe(_9, mExcludeExtensions);
+    m.putUnsafe(_10, mThreads);
+    m.putUnsafe(_11, mNoCache);
+    m.putUnsafe(_12, mGitObjects);
+    m.putUnsafe(_13, mDfaStore.toString());
+    m.putUnsafe(_14, mEditsMemoryMb);
+    m.putUnsafe(_15, mWatch);
+    m.putUnsafe(_16, mTargetDir.toString());
+    m.putUnsafe(_17, mNoPrefilter);
+    m.putUnsafe(_18, mCacheLimitMb);
     return m;
   }
 
@@ -123,6 +177,27 @@ public class StripConfig implements AbstractData {
     mSkipPatternSearch = m.opt(_7, false);
     mIncludeSymlinks = m.opt(_8, false);
     mExcludeExtensions = m.opt(_9, "bin,obj");
+    mThreads = m.opt(_10, 0);
+    mNoCache = m.opt(_11, false);
+    mGitObjects = m.opt(_12, false);
+    {
+      mDfaStore = Files.DEFAULT;
+      String x = m.opt(_13, (String) null);
+      if (x != null) {
+        mDfaStore = new File(x);
+      }
+    }
+    mEditsMemoryMb = m.opt(_14, 256);
+    mWatch = m.opt(_15, false);
+    {
+      mTargetDir = Files.DEFAULT;
+      String x = m.opt(_16, (String) null);
+      if (x != null) {
+        mTargetDir = new File(x);
+      }
+    }
+    mNoPrefilter = m.opt(_17, false);
+    mCacheLimitMb = m.opt(_18, 512);
   }
 
   public static Builder newBuilder() {
@@ -158,6 +233,24 @@ public class StripConfig implements AbstractData {
       return false;
     if (!(mExcludeExtensions.equals(other.mExcludeExtensions)))
       return false;
+    if (!(mThreads == other.mThreads))
+      return false;
+    if (!(mNoCache == other.mNoCache))
+      return false;
+    if (!(mGitObjects == other.mGitObjects))
+      return false;
+    if (!(mDfaStore.equals(other.mDfaStore)))
+      return false;
+    if (!(mEditsMemoryMb == other.mEditsMemoryMb))
+      return false;
+    if (!(mWatch == other.mWatch))
+      return false;
+    if (!(mTargetDir.equals(other.mTargetDir)))
+      return false;
+    if (!(mNoPrefilter == other.mNoPrefilter))
+      return false;
+    if (!(mCacheLimitMb == other.mCacheLimitMb))
+      return false;
     return true;
   }
 
@@ -176,6 +269,15 @@ public class StripConfig implements AbstractData {
       r = r * 37 + (mSkipPatternSearch ? 1 : 0);
       r = r * 37 + (mIncludeSymlinks ? 1 : 0);
       r = r * 37 + mExcludeExtensions.hashCode();
+      r = r * 37 + mThreads;
+      r = r * 37 + (mNoCache ? 1 : 0);
+      r = r * 37 + (mGitObjects ? 1 : 0);
+      r = r * 37 + mDfaStore.hashCode();
+      r = r * 37 + mEditsMemoryMb;
+      r = r * 37 + (mWatch ? 1 : 0);
+      r = r * 37 + mTargetDir.hashCode();
+      r = r * 37 + (mNoPrefilter ? 1 : 0);
+      r = r * 37 + mCacheLimitMb;
       m__hashcode = r;
     }
     return r;
@@ -191,6 +293,15 @@ public class StripConfig implements AbstractData {
   protected boolean mSkipPatternSearch;
   protected boolean mIncludeSymlinks;
   protected String mExcludeExtensions;
+  protected int mThreads;
+  protected boolean mNoCache;
+  protected boolean mGitObjects;
+  protected File mDfaStore;
+  protected int mEditsMemoryMb;
+  protected boolean mWatch;
+  protected File mTargetDir;
+  protected boolean mNoPrefilter;
+  protected int mCacheLimitMb;
   protected int m__hashcode;
 
   public static final class Builder extends StripConfig {
@@ -206,6 +317,15 @@ public class StripConfig implements AbstractData {
       mSkipPatternSearch = m.mSkipPatternSearch;
       mIncludeSymlinks = m.mIncludeSymlinks;
       mExcludeExtensions = m.mExcludeExtensions;
+      mThreads = m.mThreads;
+      mNoCache = m.mNoCache;
+      mGitObjects = m.mGitObjects;
+      mDfaStore = m.mDfaStore;
+      mEditsMemoryMb = m.mEditsMemoryMb;
+      mWatch = m.mWatch;
+      mTargetDir = m.mTargetDir;
+      mNoPrefilter = m.mNoPrefilter;
+      mCacheLimitMb = m.mCacheLimitMb;
     }
 
     @Override
@@ -232,6 +352,15 @@ public class StripConfig implements AbstractData {
       r.mSkipPatternSearch = mSkipPatternSearch;
       r.mIncludeSymlinks = mIncludeSymlinks;
       r.mExcludeExtensions = mExcludeExtensions;
+      r.mThreads = mThreads;
+      r.mNoCache = mNoCache;
+      r.mGitObjects = mGitObjects;
+      r.mDfaStore = mDfaStore;
+      r.mEditsMemoryMb = mEditsMemoryMb;
+      r.mWatch = mWatch;
+      r.mTargetDir = mTargetDir;
+      r.mNoPrefilter = mNoPrefilter;
+      r.mCacheLimitMb = mCacheLimitMb;
       return r;
     }
 
@@ -285,6 +414,51 @@ public class StripConfig implements AbstractData {
       return this;
     }
 
+    public Builder threads(int x) {
+      mThreads = x;
+      return this;
+    }
+
+    public Builder noCache(boolean x) {
+      mNoCache = x;
+      return this;
+    }
+
+    public Builder gitObjects(boolean x) {
+      mGitObjects = x;
+      return this;
+    }
+
+    public Builder dfaStore(File x) {
+      mDfaStore = (x == null) ? Files.DEFAULT : x;
+      return this;
+    }
+
+    public Builder editsMemoryMb(int x) {
+      mEditsMemoryMb = x;
+      return this;
+    }
+
+    public Builder watch(boolean x) {
+      mWatch = x;
+      return this;
+    }
+
+    public Builder targetDir(File x) {
+      mTargetDir = (x == null) ? Files.DEFAULT : x;
+      return this;
+    }
+
+    public Builder noPrefilter(boolean x) {
+      mNoPrefilter = x;
+      return this;
+    }
+
+    public Builder cacheLimitMb(int x) {
+      mCacheLimitMb = x;
+      return this;
+    }
+
   }
 
   private static final File _D5 = new File(".strip_cache");
@@ -299,6 +473,10 @@ public class StripConfig implements AbstractData {
     mCacheFilename = _D5;
     mCachePathExpr = "";
     mExcludeExtensions = "bin,obj";
+    mDfaStore = Files.DEFAULT;
+    mEditsMemoryMb = 256;
+    mTargetDir = Files.DEFAULT;
+    mCacheLimitMb = 512;
   }
 
 }
@@ -27,6 +27,26 @@ public class ArchiveEntry implements AbstractData {
     return mFileExtensions;
   }
 
+  public String digest() {
+    return mDigest;
+  }
+
+  public boolean chunked() {
+    return mChunked;
+  }
+
+  public int parts() {
+    return mParts;
+  }
+
+  public int compressionLevel() {
+    return mCompressionLevel;
+  }
+
+  public List<String> storeExtensions() {
+    return mStoreExtensions;
+  }
+
   @Override
   public Builder toBuilder() {
     return new Builder(this);
@@ -36,6 +56,11 @@ public class ArchiveEntry implements AbstractData {
   protected static final String _1 = "path";
   protected static final String _2 = "directory";
   protected static final String _3 = "file_extensions";
+  protected static final String _4 = "digest";
+  protected static final String _5 = "chunked";
+  protected static final String _6 = "parts";
+  protected static final String _7 = "compression_level";
+  protected static final String _8 = "store_extensions";
 
   @Override
   public String toString() {
@@ -54,6 +79,16 @@ public class ArchiveEntry implements AbstractData {
         j.add(x);
       m.put(_3, j);
     }
+    m.putUnsafe(_4, mDigest);
+    m.putUnsafe(_5, mChunked);
+    m.putUnsafe(_6, mParts);
+    m.putUnsafe(_7, mCompressionLevel);
+    {
+      JSList j = new JSList();
+      for (String x : mStoreExtensions)
+        j.add(x);
+      m.put(_8, j);
+    }
     return m;
   }
 
@@ -78,6 +113,11 @@ public class ArchiveEntry implements AbstractData {
     }
     mDirectory = m.opt(_2, false);
     mFileExtensions = DataUtil.parseListOfObjects(m.optJSList(_3), false);
+    mDigest = m.opt(_4, "");
+    mChunked = m.opt(_5, false);
+    mParts = m.opt(_6, 0);
+    mCompressionLevel = m.opt(_7, -1);
+    mStoreExtensions = DataUtil.parseListOfObjects(m.optJSList(_8), false);
   }
 
   public static Builder newBuilder() {
@@ -101,6 +141,16 @@ public class ArchiveEntry implements AbstractData {
       return false;
     if (!(mFileExtensions.equals(other.mFileExtensions)))
       return false;
+    if (!(mDigest.equals(other.mDigest)))
+      return false;
+    if (!(mChunked == other.mChunked))
+      return false;
+    if (!(mParts == other.mParts))
+      return false;
+    if (!(mCompressionLevel == other.mCompressionLevel))
+      return false;
+    if (!(mStoreExtensions.equals(other.mStoreExtensions)))
+      return false;
     return true;
   }
 
@@ -115,6 +165,13 @@ public class ArchiveEntry implements AbstractData {
       for (String x : mFileExtensions)
         if (x != null)
           r = r * 37 + x.hashCode();
+      r = r * 37 + mDigest.hashCode();
+      r = r * 37 + (mChunked ? 1 : 0);
+      r = r * 37 + mParts;
+      r = r * 37 + mCompressionLevel;
+      for (String x : mStoreExtensions)
+        if (x != null)
+          r = r * 37 + x.hashCode();
       m__hashcode = r;
     }
     return r;
@@ -124,6 +181,11 @@ public class ArchiveEntry implements AbstractData {
   protected File mPath;
   protected boolean mDirectory;
   protected List<String> mFileExtensions;
+  protected String mDigest;
+  protected boolean mChunked;
+  protected int mParts;
+  protected int mCompressionLevel;
+  protected List<String> mStoreExtensions;
   protected int m__hashcode;
 
   public static final class Builder extends ArchiveEntry {
@@ -133,6 +195,11 @@ public class ArchiveEntry implements AbstractData {
       mPath = m.mPath;
       mDirectory = m.mDirectory;
       mFileExtensions = DataUtil.mutableCopyOf(m.mFileExtensions);
+      mDigest = m.mDigest;
+      mChunked = m.mChunked;
+      mParts = m.mParts;
+      mCompressionLevel = m.mCompressionLevel;
+      mStoreExtensions = DataUtil.mutableCopyOf(m.mStoreExtensions);
     }
 
     @Override
@@ -153,6 +220,11 @@ public class ArchiveEntry implements AbstractData {
       r.mPath = mPath;
       r.mDirectory = mDirectory;
       r.mFileExtensions = DataUtil.immutableCopyOf(mFileExtensions);
+      r.mDigest = mDigest;
+      r.mChunked = mChunked;
+      r.mParts = mParts;
+      r.mCompressionLevel = mCompressionLevel;
+      r.mStoreExtensions = DataUtil.immutableCopyOf(mStoreExtensions);
       return r;
     }
 
@@ -176,6 +248,31 @@ public class ArchiveEntry implements AbstractData {
       return this;
     }
 
+    public Builder digest(String x) {
+      mDigest = (x == null) ? "" : x;
+      return this;
+    }
+
+    public Builder chunked(boolean x) {
+      mChunked = x;
+      return this;
+    }
+
+    public Builder parts(int x) {
+      mParts = x;
+      return this;
+    }
+
+    public Builder compressionLevel(int x) {
+      mCompressionLevel = x;
+      return this;
+    }
+
+    public Builder storeExtensions(List<String> x) {
+      mStoreExtensions = (x == null) ? new ArrayList(0) : x;
+      return this;
+    }
+
   }
 
   public static final ArchiveEntry DEFAULT_INSTANCE = new ArchiveEntry();
@@ -183,6 +280,9 @@ public class ArchiveEntry implements AbstractData {
   private ArchiveEntry() {
     mPath = Files.DEFAULT;
     mFileExtensions = DataUtil.emptyList();
+    mDigest = "";
+    mCompressionLevel = -1;
+    mStoreExtensions = DataUtil.emptyList();
   }
 
 }
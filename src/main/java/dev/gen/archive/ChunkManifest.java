@@ -0,0 +1,133 @@
+package dev.gen.archive;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import js.data.AbstractData;
+import js.data.DataUtil;
+import js.json.JSMap;
+
+public class ChunkManifest implements AbstractData {
+
+  public Map<String, ChunkedFile> files() {
+    return mFiles;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "files";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    {
+      JSMap j = new JSMap();
+      for (Map.Entry<String, ChunkedFile> e : mFiles.entrySet())
+        j.put(e.getKey(), e.getValue().toJson());
+      m.put(_0, j);
+    }
+    return m;
+  }
+
+  @Override
+  public ChunkManifest build() {
+    return this;
+  }
+
+  @Override
+  public ChunkManifest parse(Object obj) {
+    return new ChunkManifest((JSMap) obj);
+  }
+
+  private ChunkManifest(JSMap m) {
+    {
+      mFiles = DataUtil.emptyMap();
+      {
+        JSMap m2 = m.optJSMap("files");
+        if (m2 != null && !m2.isEmpty()) {
+          Map<String, ChunkedFile> mp = new ConcurrentHashMap<>();
+          for (Map.Entry<String, Object> e : m2.wrappedMap().entrySet())
+            mp.put(e.getKey(), ChunkedFile.DEFAULT_INSTANCE.parse((JSMap) e.getValue()));
+          mFiles = mp;
+        }
+      }
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof ChunkManifest))
+      return false;
+    ChunkManifest other = (ChunkManifest) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mFiles.equals(other.mFiles)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + mFiles.hashCode();
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected Map<String, ChunkedFile> mFiles;
+  protected int m__hashcode;
+
+  public static final class Builder extends ChunkManifest {
+
+    private Builder(ChunkManifest m) {
+      mFiles = m.mFiles;
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public ChunkManifest build() {
+      ChunkManifest r = new ChunkManifest();
+      r.mFiles = mFiles;
+      return r;
+    }
+
+    public Builder files(Map<String, ChunkedFile> x) {
+      mFiles = (x == null) ? DataUtil.emptyMap() : x;
+      return this;
+    }
+
+  }
+
+  public static final ChunkManifest DEFAULT_INSTANCE = new ChunkManifest();
+
+  private ChunkManifest() {
+    mFiles = DataUtil.emptyMap();
+  }
+
+}
@@ -0,0 +1,143 @@
+package dev.gen.archive;
+
+import java.util.ArrayList;
+import java.util.List;
+import js.data.AbstractData;
+import js.data.DataUtil;
+import js.json.JSList;
+import js.json.JSMap;
+
+public class ChunkedFile implements AbstractData {
+
+  public long size() {
+    return mSize;
+  }
+
+  public List<String> chunks() {
+    return mChunks;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "size";
+  protected static final String _1 = "chunks";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    m.putUnsafe(_0, mSize);
+    {
+      JSList j = new JSList();
+      for (String x : mChunks)
+        j.add(x);
+      m.put(_1, j);
+    }
+    return m;
+  }
+
+  @Override
+  public ChunkedFile build() {
+    return this;
+  }
+
+  @Override
+  public ChunkedFile parse(Object obj) {
+    return new ChunkedFile((JSMap) obj);
+  }
+
+  private ChunkedFile(JSMap m) {
+    mSize = m.opt(_0, 0L);
+    mChunks = DataUtil.parseListOfObjects(m.optJSList(_1), false);
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof ChunkedFile))
+      return false;
+    ChunkedFile other = (ChunkedFile) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mSize == other.mSize))
+      return false;
+    if (!(mChunks.equals(other.mChunks)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + (int) mSize;
+      for (String x : mChunks)
+        if (x != null)
+          r = r * 37 + x.hashCode();
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected long mSize;
+  protected List<String> mChunks;
+  protected int m__hashcode;
+
+  public static final class Builder extends ChunkedFile {
+
+    private Builder(ChunkedFile m) {
+      mSize = m.mSize;
+      mChunks = DataUtil.mutableCopyOf(m.mChunks);
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public ChunkedFile build() {
+      ChunkedFile r = new ChunkedFile();
+      r.mSize = mSize;
+      r.mChunks = DataUtil.immutableCopyOf(mChunks);
+      return r;
+    }
+
+    public Builder size(long x) {
+      mSize = x;
+      return this;
+    }
+
+    public Builder chunks(List<String> x) {
+      mChunks = (x == null) ? new ArrayList(0) : x;
+      return this;
+    }
+
+  }
+
+  public static final ChunkedFile DEFAULT_INSTANCE = new ChunkedFile();
+
+  private ChunkedFile() {
+    mChunks = DataUtil.emptyList();
+  }
+
+}
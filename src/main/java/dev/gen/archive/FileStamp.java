@@ -0,0 +1,150 @@
+package dev.gen.archive;
+
+import js.data.AbstractData;
+import js.json.JSMap;
+
+public class FileStamp implements AbstractData {
+
+  public long size() {
+    return mSize;
+  }
+
+  public long modified() {
+    return mModified;
+  }
+
+  public String hash() {
+    return mHash;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "size";
+  protected static final String _1 = "modified";
+  protected static final String _2 = "hash";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    m.putUnsafe(_0, mSize);
+    m.putUnsafe(_1, mModified);
+    m.putUnsafe(_2, mHash);
+    return m;
+  }
+
+  @Override
+  public FileStamp build() {
+    return this;
+  }
+
+  @Override
+  public FileStamp parse(Object obj) {
+    return new FileStamp((JSMap) obj);
+  }
+
+  private FileStamp(JSMap m) {
+    mSize = m.opt(_0, 0L);
+    mModified = m.opt(_1, 0L);
+    mHash = m.opt(_2, "");
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof FileStamp))
+      return false;
+    FileStamp other = (FileStamp) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mSize == other.mSize))
+      return false;
+    if (!(mModified == other.mModified))
+      return false;
+    if (!(mHash.equals(other.mHash)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + (int) mSize;
+      r = r * 37 + (int) mModified;
+      r = r * 37 + mHash.hashCode();
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected long mSize;
+  protected long mModified;
+  protected String mHash;
+  protected int m__hashcode;
+
+  public static final class Builder extends FileStamp {
+
+    private Builder(FileStamp m) {
+      mSize = m.mSize;
+      mModified = m.mModified;
+      mHash = m.mHash;
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public FileStamp build() {
+      FileStamp r = new FileStamp();
+      r.mSize = mSize;
+      r.mModified = mModified;
+      r.mHash = mHash;
+      return r;
+    }
+
+    public Builder size(long x) {
+      mSize = x;
+      return this;
+    }
+
+    public Builder modified(long x) {
+      mModified = x;
+      return this;
+    }
+
+    public Builder hash(String x) {
+      mHash = (x == null) ? "" : x;
+      return this;
+    }
+
+  }
+
+  public static final FileStamp DEFAULT_INSTANCE = new FileStamp();
+
+  private FileStamp() {
+    mHash = "";
+  }
+
+}
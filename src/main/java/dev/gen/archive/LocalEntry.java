@@ -1,6 +1,9 @@
 package dev.gen.archive;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import js.data.AbstractData;
+import js.data.DataUtil;
 import js.json.JSMap;
 
 public class LocalEntry implements AbstractData {
@@ -17,6 +20,10 @@ public class LocalEntry implements AbstractData {
     return mPending;
   }
 
+  public Map<String, FileStamp> fileStamps() {
+    return mFileStamps;
+  }
+
   @Override
   public Builder toBuilder() {
     return new Builder(this);
@@ -25,6 +32,7 @@ public class LocalEntry implements AbstractData {
   protected static final String _0 = "version";
   protected static final String _1 = "offload";
   protected static final String _2 = "pending";
+  protected static final String _3 = "file_stamps";
 
   @Override
   public String toString() {
@@ -37,6 +45,12 @@ public class LocalEntry implements AbstractData {
     m.putUnsafe(_0, mVersion);
     m.putUnsafe(_1, mOffload);
     m.putUnsafe(_2, mPending.toString().toLowerCase());
+    {
+      JSMap j = new JSMap();
+      for (Map.Entry<String, FileStamp> e : mFileStamps.entrySet())
+        j.put(e.getKey(), e.getValue().toJson());
+      m.put(_3, j);
+    }
     return m;
   }
 
@@ -57,6 +71,18 @@ public class LocalEntry implements AbstractData {
       String x = m.opt(_2, "");
       mPending = x.isEmpty() ? Oper.DEFAULT_INSTANCE : Oper.valueOf(x.toUpperCase());
     }
+    {
+      mFileStamps = DataUtil.emptyMap();
+      {
+        JSMap m2 = m.optJSMap("file_stamps");
+        if (m2 != null && !m2.isEmpty()) {
+          Map<String, FileStamp> mp = new ConcurrentHashMap<>();
+          for (Map.Entry<String, Object> e : m2.wrappedMap().entrySet())
+            mp.put(e.getKey(), FileStamp.DEFAULT_INSTANCE.parse((JSMap) e.getValue()));
+          mFileStamps = mp;
+        }
+      }
+    }
   }
 
   public static Builder newBuilder() {
@@ -78,6 +104,8 @@ public class LocalEntry implements AbstractData {
       return false;
     if (!(mPending.equals(other.mPending)))
       return false;
+    if (!(mFileStamps.equals(other.mFileStamps)))
+      return false;
     return true;
   }
 
@@ -89,6 +117,7 @@ public class LocalEntry implements AbstractData {
       r = r * 37 + mVersion;
       r = r * 37 + (mOffload ? 1 : 0);
       r = r * 37 + mPending.ordinal();
+      r = r * 37 + mFileStamps.hashCode();
       m__hashcode = r;
     }
     return r;
@@ -97,6 +126,7 @@ public class LocalEntry implements AbstractData {
   protected int mVersion;
   protected boolean mOffload;
   protected Oper mPending;
+  protected Map<String, FileStamp> mFileStamps;
   protected int m__hashcode;
 
   public static final class Builder extends LocalEntry {
@@ -105,6 +135,7 @@ public class LocalEntry implements AbstractData {
       mVersion = m.mVersion;
       mOffload = m.mOffload;
       mPending = m.mPending;
+      mFileStamps = m.mFileStamps;
     }
 
     @Override
@@ -124,6 +155,7 @@ public class LocalEntry implements AbstractData {
       r.mVersion = mVersion;
       r.mOffload = mOffload;
       r.mPending = mPending;
+      r.mFileStamps = mFileStamps;
       return r;
     }
 
@@ -142,12 +174,18 @@ public class LocalEntry implements AbstractData {
       return this;
     }
 
+    public Builder fileStamps(Map<String, FileStamp> x) {
+      mFileStamps = (x == null) ? DataUtil.emptyMap() : x;
+      return this;
+    }
+
   }
 
   public static final LocalEntry DEFAULT_INSTANCE = new LocalEntry();
 
   private LocalEntry() {
     mPending = Oper.DEFAULT_INSTANCE;
+    mFileStamps = DataUtil.emptyMap();
   }
 
 }
@@ -2,7 +2,7 @@ package dev.gen.archive;
 
 public enum Oper {
 
-  NONE, UPDATE, PUSH, FORGET, OFFLOAD;
+  NONE, UPDATE, PUSH, FORGET, OFFLOAD, FETCH;
 
   public static final Oper DEFAULT_INSTANCE = NONE;
 
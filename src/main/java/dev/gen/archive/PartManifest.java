@@ -0,0 +1,161 @@
+package dev.gen.archive;
+
+import java.util.ArrayList;
+import java.util.List;
+import js.data.AbstractData;
+import js.data.DataUtil;
+import js.json.JSList;
+import js.json.JSMap;
+
+public class PartManifest implements AbstractData {
+
+  public long size() {
+    return mSize;
+  }
+
+  public long partSize() {
+    return mPartSize;
+  }
+
+  public List<String> hashes() {
+    return mHashes;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "size";
+  protected static final String _1 = "part_size";
+  protected static final String _2 = "hashes";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    m.putUnsafe(_0, mSize);
+    m.putUnsafe(_1, mPartSize);
+    {
+      JSList j = new JSList();
+      for (String x : mHashes)
+        j.add(x);
+      m.put(_2, j);
+    }
+    return m;
+  }
+
+  @Override
+  public PartManifest build() {
+    return this;
+  }
+
+  @Override
+  public PartManifest parse(Object obj) {
+    return new PartManifest((JSMap) obj);
+  }
+
+  private PartManifest(JSMap m) {
+    mSize = m.opt(_0, 0L);
+    mPartSize = m.opt(_1, 0L);
+    mHashes = DataUtil.parseListOfObjects(m.optJSList(_2), false);
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof PartManifest))
+      return false;
+    PartManifest other = (PartManifest) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mSize == other.mSize))
+      return false;
+    if (!(mPartSize == other.mPartSize))
+      return false;
+    if (!(mHashes.equals(other.mHashes)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + (int) mSize;
+      r = r * 37 + (int) mPartSize;
+      for (String x : mHashes)
+        if (x != null)
+          r = r * 37 + x.hashCode();
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected long mSize;
+  protected long mPartSize;
+  protected List<String> mHashes;
+  protected int m__hashcode;
+
+  public static final class Builder extends PartManifest {
+
+    private Builder(PartManifest m) {
+      mSize = m.mSize;
+      mPartSize = m.mPartSize;
+      mHashes = DataUtil.mutableCopyOf(m.mHashes);
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public PartManifest build() {
+      PartManifest r = new PartManifest();
+      r.mSize = mSize;
+      r.mPartSize = mPartSize;
+      r.mHashes = DataUtil.immutableCopyOf(mHashes);
+      return r;
+    }
+
+    public Builder size(long x) {
+      mSize = x;
+      return this;
+    }
+
+    public Builder partSize(long x) {
+      mPartSize = x;
+      return this;
+    }
+
+    public Builder hashes(List<String> x) {
+      mHashes = (x == null) ? new ArrayList(0) : x;
+      return this;
+    }
+
+  }
+
+  public static final PartManifest DEFAULT_INSTANCE = new PartManifest();
+
+  private PartManifest() {
+    mHashes = DataUtil.emptyList();
+  }
+
+}
@@ -0,0 +1,199 @@
+package dev.gen.archive;
+
+import java.util.ArrayList;
+import java.util.List;
+import js.data.AbstractData;
+import js.data.DataUtil;
+import js.json.JSList;
+import js.json.JSMap;
+
+public class Transfer implements AbstractData {
+
+  public boolean push() {
+    return mPush;
+  }
+
+  public int version() {
+    return mVersion;
+  }
+
+  public String name() {
+    return mName;
+  }
+
+  public String digest() {
+    return mDigest;
+  }
+
+  public List<String> partHashes() {
+    return mPartHashes;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "push";
+  protected static final String _1 = "version";
+  protected static final String _2 = "name";
+  protected static final String _3 = "digest";
+  protected static final String _4 = "part_hashes";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    m.putUnsafe(_0, mPush);
+    m.putUnsafe(_1, mVersion);
+    m.putUnsafe(_2, mName);
+    m.putUnsafe(_3, mDigest);
+    {
+      JSList j = new JSList();
+      for (String x : mPartHashes)
+        j.add(x);
+      m.put(_4, j);
+    }
+    return m;
+  }
+
+  @Override
+  public Transfer build() {
+    return this;
+  }
+
+  @Override
+  public Transfer parse(Object obj) {
+    return new Transfer((JSMap) obj);
+  }
+
+  private Transfer(JSMap m) {
+    mPush = m.opt(_0, false);
+    mVersion = m.opt(_1, 0);
+    mName = m.opt(_2, "");
+    mDigest = m.opt(_3, "");
+    mPartHashes = DataUtil.parseListOfObjects(m.optJSList(_4), false);
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof Transfer))
+      return false;
+    Transfer other = (Transfer) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mPush == other.mPush))
+      return false;
+    if (!(mVersion == other.mVersion))
+      return false;
+    if (!(mName.equals(other.mName)))
+      return false;
+    if (!(mDigest.equals(other.mDigest)))
+      return false;
+    if (!(mPartHashes.equals(other.mPartHashes)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + (mPush ? 1 : 0);
+      r = r * 37 + mVersion;
+      r = r * 37 + mName.hashCode();
+      r = r * 37 + mDigest.hashCode();
+      for (String x : mPartHashes)
+        if (x != null)
+          r = r * 37 + x.hashCode();
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected boolean mPush;
+  protected int mVersion;
+  protected String mName;
+  protected String mDigest;
+  protected List<String> mPartHashes;
+  protected int m__hashcode;
+
+  public static final class Builder extends Transfer {
+
+    private Builder(Transfer m) {
+      mPush = m.mPush;
+      mVersion = m.mVersion;
+      mName = m.mName;
+      mDigest = m.mDigest;
+      mPartHashes = DataUtil.mutableCopyOf(m.mPartHashes);
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public Transfer build() {
+      Transfer r = new Transfer();
+      r.mPush = mPush;
+      r.mVersion = mVersion;
+      r.mName = mName;
+      r.mDigest = mDigest;
+      r.mPartHashes = DataUtil.immutableCopyOf(mPartHashes);
+      return r;
+    }
+
+    public Builder push(boolean x) {
+      mPush = x;
+      return this;
+    }
+
+    public Builder version(int x) {
+      mVersion = x;
+      return this;
+    }
+
+    public Builder name(String x) {
+      mName = (x == null) ? "" : x;
+      return this;
+    }
+
+    public Builder digest(String x) {
+      mDigest = (x == null) ? "" : x;
+      return this;
+    }
+
+    public Builder partHashes(List<String> x) {
+      mPartHashes = (x == null) ? new ArrayList(0) : x;
+      return this;
+    }
+
+  }
+
+  public static final Transfer DEFAULT_INSTANCE = new Transfer();
+
+  private Transfer() {
+    mName = "";
+    mDigest = "";
+    mPartHashes = DataUtil.emptyList();
+  }
+
+}
@@ -0,0 +1,133 @@
+package dev.gen.archive;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import js.data.AbstractData;
+import js.data.DataUtil;
+import js.json.JSMap;
+
+public class TransferLog implements AbstractData {
+
+  public Map<String, Transfer> transfers() {
+    return mTransfers;
+  }
+
+  @Override
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  protected static final String _0 = "transfers";
+
+  @Override
+  public String toString() {
+    return toJson().prettyPrint();
+  }
+
+  @Override
+  public JSMap toJson() {
+    JSMap m = new JSMap();
+    {
+      JSMap j = new JSMap();
+      for (Map.Entry<String, Transfer> e : mTransfers.entrySet())
+        j.put(e.getKey(), e.getValue().toJson());
+      m.put(_0, j);
+    }
+    return m;
+  }
+
+  @Override
+  public TransferLog build() {
+    return this;
+  }
+
+  @Override
+  public TransferLog parse(Object obj) {
+    return new TransferLog((JSMap) obj);
+  }
+
+  private TransferLog(JSMap m) {
+    {
+      mTransfers = DataUtil.emptyMap();
+      {
+        JSMap m2 = m.optJSMap("transfers");
+        if (m2 != null && !m2.isEmpty()) {
+          Map<String, Transfer> mp = new ConcurrentHashMap<>();
+          for (Map.Entry<String, Object> e : m2.wrappedMap().entrySet())
+            mp.put(e.getKey(), Transfer.DEFAULT_INSTANCE.parse((JSMap) e.getValue()));
+          mTransfers = mp;
+        }
+      }
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder(DEFAULT_INSTANCE);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object)
+      return true;
+    if (object == null || !(object instanceof TransferLog))
+      return false;
+    TransferLog other = (TransferLog) object;
+    if (other.hashCode() != hashCode())
+      return false;
+    if (!(mTransfers.equals(other.mTransfers)))
+      return false;
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int r = m__hashcode;
+    if (r == 0) {
+      r = 1;
+      r = r * 37 + mTransfers.hashCode();
+      m__hashcode = r;
+    }
+    return r;
+  }
+
+  protected Map<String, Transfer> mTransfers;
+  protected int m__hashcode;
+
+  public static final class Builder extends TransferLog {
+
+    private Builder(TransferLog m) {
+      mTransfers = m.mTransfers;
+    }
+
+    @Override
+    public Builder toBuilder() {
+      return this;
+    }
+
+    @Override
+    public int hashCode() {
+      m__hashcode = 0;
+      return super.hashCode();
+    }
+
+    @Override
+    public TransferLog build() {
+      TransferLog r = new TransferLog();
+      r.mTransfers = mTransfers;
+      return r;
+    }
+
+    public Builder transfers(Map<String, Transfer> x) {
+      mTransfers = (x == null) ? DataUtil.emptyMap() : x;
+      return this;
+    }
+
+  }
+
+  public static final TransferLog DEFAULT_INSTANCE = new TransferLog();
+
+  private TransferLog() {
+    mTransfers = DataUtil.emptyMap();
+  }
+
+}
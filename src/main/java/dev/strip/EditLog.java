@@ -0,0 +1,164 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import dev.gen.EditCode;
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * The edits that StripOper is to apply to the target, in the order they were
+ * recorded.
+ *
+ * The content of modified files is held in memory until a budget is reached;
+ * beyond that, content is appended to a temporary file, and read back when the
+ * edit is applied. Entries may be constructed from multiple threads
+ */
+public class EditLog extends BaseObject {
+
+  public EditLog(long memoryBudgetBytes) {
+    mMemoryBudget = memoryBudgetBytes;
+  }
+
+  public static final class Entry {
+
+    Entry(String path, EditCode code, String content, long offset, int length) {
+      mPath = path;
+      mCode = code;
+      mContent = content;
+      mOffset = offset;
+      mLength = length;
+    }
+
+    /**
+     * Path of the file (or directory), relative to the project directory
+     */
+    public String path() {
+      return mPath;
+    }
+
+    public EditCode code() {
+      return mCode;
+    }
+
+    private final String mPath;
+    private final EditCode mCode;
+    // Content if held in memory, otherwise null
+    private final String mContent;
+    // Location of content within spill file, if it's not held in memory
+    private final long mOffset;
+    private final int mLength;
+  }
+
+  /**
+   * Construct an entry, storing its content (spilling it to disk if the memory
+   * budget has been reached). The entry is not added to the log
+   */
+  public Entry newEntry(File relPath, EditCode code, String content) {
+    var path = relPath.toString();
+    // Assume two bytes per character
+    long size = 2L * content.length();
+    synchronized (this) {
+      if (mMemoryUsed + size <= mMemoryBudget) {
+        mMemoryUsed += size;
+        return new Entry(path, code, content, 0, 0);
+      }
+      var bytes = content.getBytes(StandardCharsets.UTF_8);
+      long offset = spill(bytes);
+      mSpilledCount++;
+      return new Entry(path, code, null, offset, bytes.length);
+    }
+  }
+
+  /**
+   * Add an entry to the end of the log
+   */
+  public synchronized void add(Entry entry) {
+    mEntries.add(entry);
+  }
+
+  public List<Entry> entries() {
+    return Collections.unmodifiableList(mEntries);
+  }
+
+  public int size() {
+    return mEntries.size();
+  }
+
+  public int spilledCount() {
+    return mSpilledCount;
+  }
+
+  /**
+   * Get the content of an entry, reading it from disk if it was spilled
+   */
+  public String content(Entry entry) {
+    if (entry.mContent != null)
+      return entry.mContent;
+    var buffer = ByteBuffer.allocate(entry.mLength);
+    try {
+      long position = entry.mOffset;
+      while (buffer.hasRemaining()) {
+        int count = mSpillChannel.read(buffer, position);
+        checkState(count > 0, "unexpected end of spill file");
+        position += count;
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    return new String(buffer.array(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Discard the spill file, if one was created
+   */
+  public synchronized void close() {
+    if (mSpillChannel == null)
+      return;
+    try {
+      mSpillChannel.close();
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    mSpillChannel = null;
+    Files.S.deleteFile(mSpillFile);
+  }
+
+  private long spill(byte[] bytes) {
+    try {
+      if (mSpillChannel == null) {
+        mSpillFile = File.createTempFile("_strip_edits_", ".bin");
+        mSpillFile.deleteOnExit();
+        mSpillChannel = FileChannel.open(mSpillFile.toPath(), StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        log("memory budget reached; spilling edits to:", mSpillFile);
+      }
+      long offset = mSpillLength;
+      var buffer = ByteBuffer.wrap(bytes);
+      long position = offset;
+      while (buffer.hasRemaining())
+        position += mSpillChannel.write(buffer, position);
+      mSpillLength = position;
+      return offset;
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  private final long mMemoryBudget;
+  private final List<Entry> mEntries = arrayList();
+  private long mMemoryUsed;
+  private int mSpilledCount;
+  private File mSpillFile;
+  private FileChannel mSpillChannel;
+  private long mSpillLength;
+}
@@ -7,18 +7,33 @@ import js.json.JSMap;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import static js.base.Tools.*;
 
+/**
+ * The state of the filter within a particular directory.
+ *
+ * The set of files to delete is immutable, and is shared by a state with all of
+ * the states descended from it (until a .delete list replaces it), so
+ * descending into a subdirectory takes constant time
+ */
 public class FilterState extends BaseObject {
 
 
   public FilterState(File containerDir, Collection<File> deleteFiles) {
     mDirectoryAbs = Files.assertAbsolute(containerDir);
+    Set<File> s = hashSet();
     for (var f : deleteFiles)
-      mDeleteFilesAbs.add(Files.assertAbsolute(f));
+      s.add(Files.assertAbsolute(f));
+    mDeleteFilesAbs = Collections.unmodifiableSet(s);
+  }
+
+  private FilterState(Set<File> sharedDeleteFiles, File containerDir) {
+    mDirectoryAbs = containerDir;
+    mDeleteFilesAbs = sharedDeleteFiles;
   }
 
   /**
@@ -28,7 +43,7 @@ public class FilterState extends BaseObject {
     Files.assertAbsolute(absSubdir);
     var rel = Files.relativeToContainingDirectory(absSubdir, this.directory());
     log("descendInto:", rel);
-    var fs = new FilterState(absSubdir, this.deleteFilesAbs());
+    var fs = new FilterState(mDeleteFilesAbs, absSubdir);
     log("...returning:", INDENT, fs);
     return fs;
   }
@@ -43,8 +58,8 @@ public class FilterState extends BaseObject {
 
   private final File mDirectoryAbs;
 
-  // This map should be considered immutable.  If changes are made, construct a new copy
-  private final Set<File> mDeleteFilesAbs = hashSet();
+  // This set is immutable, and may be shared with other states
+  private final Set<File> mDeleteFilesAbs;
 
   @Override
   public JSMap toJson() {
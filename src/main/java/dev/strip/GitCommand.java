@@ -0,0 +1,75 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import js.file.Files;
+
+/**
+ * Runs git commands within a repository, optionally with their standard input
+ * read from a file and with additional environment variables.
+ *
+ * (SystemCall is used for simple commands elsewhere; these commands can have
+ * inputs and outputs too large to be held in pipe buffers)
+ */
+final class GitCommand {
+
+  /**
+   * Run a git command, and return its standard output
+   *
+   * @param input
+   *          file to read standard input from, or null
+   * @param env
+   *          additional environment variables, or null
+   */
+  static String run(File repoDir, File input, Map<String, String> env, String... args) {
+    var cmd = arrayList("git");
+    for (var a : args)
+      cmd.add(a);
+    var pb = new ProcessBuilder(cmd);
+    pb.directory(repoDir);
+    if (env != null)
+      pb.environment().putAll(env);
+    if (input != null)
+      pb.redirectInput(input);
+    File errFile = null;
+    try {
+      // Send stderr to a file, so neither output can block the process while we read the other
+      errFile = File.createTempFile("_strip_git_", ".txt");
+      pb.redirectError(errFile);
+      var process = pb.start();
+      if (input == null)
+        process.getOutputStream().close();
+      var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+      int exitCode = process.waitFor();
+      if (exitCode != 0)
+        throw badState("git command failed:", String.join(" ", cmd), INDENT, Files.readString(errFile));
+      return output;
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    } catch (InterruptedException e) {
+      throw asRuntimeException(e);
+    } finally {
+      if (errFile != null)
+        errFile.delete();
+    }
+  }
+
+  static String run(File repoDir, String... args) {
+    return run(repoDir, null, null, args);
+  }
+
+  /**
+   * Run a git command and return its output, with the trailing linefeed removed
+   */
+  static String line(File repoDir, String... args) {
+    return run(repoDir, args).trim();
+  }
+
+  private GitCommand() {
+  }
+}
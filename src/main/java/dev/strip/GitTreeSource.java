@@ -0,0 +1,178 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * A SourceTree that reads the files from the tree of a git commit, without
+ * checking it out.
+ *
+ * The tree is listed once (using 'git ls-tree'), and file contents are read
+ * on demand from a single 'git cat-file --batch' process. Submodules are
+ * omitted, so they are left unchanged in the target
+ */
+class GitTreeSource extends BaseObject implements SourceTree {
+
+  public static final String MODE_SYMLINK = "120000";
+
+  GitTreeSource(File projectDir, String commit) {
+    mProjectDir = projectDir;
+    mChildren.put("", arrayList());
+    var listing = GitCommand.run(projectDir, "ls-tree", "-r", "-t", "-z", "--full-tree", commit);
+    for (var record : split(listing, '\0')) {
+      if (record.isEmpty())
+        continue;
+      // <mode> SP <type> SP <object> TAB <path>
+      int tab = record.indexOf('\t');
+      var fields = split(record.substring(0, tab), ' ');
+      var path = record.substring(tab + 1);
+      var ent = new Entry(fields.get(0), fields.get(1), fields.get(2));
+      if (ent.type.equals("commit"))
+        continue;
+      mEntries.put(path, ent);
+      if (ent.type.equals("tree"))
+        mChildren.put(path, arrayList());
+      int slash = path.lastIndexOf('/');
+      var parent = (slash < 0) ? "" : path.substring(0, slash);
+      mChildren.get(parent).add(path);
+    }
+  }
+
+  @Override
+  public boolean exists(File abs) {
+    var rel = relative(abs);
+    return rel.isEmpty() || mEntries.containsKey(rel);
+  }
+
+  @Override
+  public boolean isDirectory(File abs) {
+    return mChildren.containsKey(relative(abs));
+  }
+
+  @Override
+  public boolean isSymLink(File abs) {
+    var ent = mEntries.get(relative(abs));
+    return ent != null && ent.mode.equals(MODE_SYMLINK);
+  }
+
+  @Override
+  public List<File> filesWithinDir(File absDir) {
+    List<File> result = arrayList();
+    var children = mChildren.get(relative(absDir));
+    if (children != null)
+      for (var rel : children)
+        result.add(new File(mProjectDir, rel));
+    return result;
+  }
+
+  @Override
+  public String readString(File abs) {
+    var rel = relative(abs);
+    var ent = mEntries.get(rel);
+    checkArgument(ent != null && ent.type.equals("blob"), "no such file in tree:", rel);
+    return new String(readBlob(ent.object), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Get the mode of a file, e.g. "100644"
+   */
+  public String mode(String relPath) {
+    return mEntries.get(relPath).mode;
+  }
+
+  /**
+   * Stop the cat-file process, if one was started
+   */
+  public synchronized void close() {
+    if (mCatFile == null)
+      return;
+    try {
+      mCatFileInput.close();
+      mCatFile.waitFor();
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    } catch (InterruptedException e) {
+      throw asRuntimeException(e);
+    }
+    mCatFile = null;
+  }
+
+  private String relative(File abs) {
+    if (abs.equals(mProjectDir))
+      return "";
+    var path = abs.getPath();
+    var prefix = mProjectDir.getPath() + "/";
+    checkArgument(path.startsWith(prefix), "not within project directory:", abs);
+    return path.substring(prefix.length());
+  }
+
+  private synchronized byte[] readBlob(String object) {
+    try {
+      if (mCatFile == null) {
+        var pb = new ProcessBuilder("git", "cat-file", "--batch");
+        pb.directory(mProjectDir);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        mCatFile = pb.start();
+        mCatFileInput = mCatFile.getOutputStream();
+        mCatFileOutput = new BufferedInputStream(mCatFile.getInputStream());
+      }
+      mCatFileInput.write((object + "\n").getBytes(StandardCharsets.UTF_8));
+      mCatFileInput.flush();
+
+      // <object> SP <type> SP <size> LF <contents> LF
+      var header = split(readLine(mCatFileOutput), ' ');
+      checkState(header.size() == 3 && header.get(1).equals("blob"), "unexpected cat-file response:", header);
+      int size = Integer.parseInt(header.get(2));
+      var content = mCatFileOutput.readNBytes(size);
+      checkState(content.length == size && mCatFileOutput.read() == '\n', "truncated cat-file response for:",
+          object);
+      return content;
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  private static String readLine(InputStream input) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    while (true) {
+      int c = input.read();
+      checkState(c >= 0, "unexpected end of cat-file output");
+      if (c == '\n')
+        break;
+      bytes.write(c);
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static final class Entry {
+
+    Entry(String mode, String type, String object) {
+      this.mode = mode;
+      this.type = type;
+      this.object = object;
+    }
+
+    final String mode;
+    final String type;
+    final String object;
+  }
+
+  private final File mProjectDir;
+  private final Map<String, Entry> mEntries = hashMap();
+  private final Map<String, List<String>> mChildren = hashMap();
+  private Process mCatFile;
+  private OutputStream mCatFileInput;
+  private InputStream mCatFileOutput;
+}
@@ -0,0 +1,143 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dev.gen.EditCode;
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * Applies an edits map to a branch by writing git objects directly: the new
+ * file contents are written as blobs, the target branch's tree is edited
+ * within a temporary index, and the resulting tree is committed to the branch.
+ * Neither the working tree nor the repository's own index is touched
+ */
+class GitTreeWriter extends BaseObject {
+
+  GitTreeWriter(File projectDir, GitTreeSource source) {
+    mProjectDir = projectDir;
+    mSource = source;
+  }
+
+  /**
+   * Commit the result of applying the edits to a branch
+   *
+   * @return the new commit, or null if the edits made no change to the branch
+   */
+  public String commit(String branch, EditLog editLog, String message) {
+    var ref = "refs/heads/" + branch;
+    var parent = git("rev-parse", "--verify", ref + "^{commit}");
+    var parentTree = git("rev-parse", parent + "^{tree}");
+
+    var workDir = Files.createTempDir("strip_git_");
+    try {
+      Map<String, String> indexEnv = hashMap();
+      indexEnv.put("GIT_INDEX_FILE", new File(workDir, "index").getPath());
+      GitCommand.run(mProjectDir, null, indexEnv, "read-tree", parent);
+
+      var indexInfo = new StringBuilder();
+      appendDeletions(indexInfo, ref, editLog, zeroObject(parent));
+      appendModifications(indexInfo, workDir, editLog);
+      var indexInfoFile = new File(workDir, "index_info.txt");
+      Files.S.writeString(indexInfoFile, indexInfo.toString());
+      GitCommand.run(mProjectDir, indexInfoFile, indexEnv, "update-index", "--add", "--replace",
+          "-z", "--index-info");
+
+      var tree = GitCommand.run(mProjectDir, null, indexEnv, "write-tree").trim();
+      if (tree.equals(parentTree)) {
+        log("edits made no change to tree:", tree);
+        return null;
+      }
+      var commit = git("commit-tree", tree, "-p", parent, "-m", message);
+      // Supply the old value, so the update fails if the branch has moved in the meantime
+      git("update-ref", "-m", "strip", ref, commit, parent);
+      return commit;
+    } finally {
+      Files.S.deleteDirectory(workDir);
+    }
+  }
+
+  /**
+   * Remove the files that are to be deleted (including those within deleted
+   * directories) from the index
+   */
+  private void appendDeletions(StringBuilder indexInfo, String ref, EditLog editLog, String zeroObject) {
+    Set<String> deletePaths = hashSet();
+    for (var edit : editLog.entries())
+      if (edit.code() == EditCode.DELETE)
+        deletePaths.add(edit.path());
+    if (deletePaths.isEmpty())
+      return;
+
+    var listing = git("ls-tree", "-r", "-z", "--name-only", "--full-tree", ref);
+    for (var path : split(listing, '\0')) {
+      if (path.isEmpty())
+        continue;
+      // Delete the path if it, or any of its parent directories, is to be deleted
+      var p = path;
+      while (true) {
+        if (deletePaths.contains(p)) {
+          // A mode of zero removes the path
+          indexInfo.append("0 ").append(zeroObject).append('\t').append(path).append('\0');
+          break;
+        }
+        int slash = p.lastIndexOf('/');
+        if (slash < 0)
+          break;
+        p = p.substring(0, slash);
+      }
+    }
+  }
+
+  /**
+   * Write the modified files as blobs, and add them to the index
+   */
+  private void appendModifications(StringBuilder indexInfo, File workDir, EditLog editLog) {
+    List<String> modifyPaths = arrayList();
+    var pathsFile = new StringBuilder();
+    var blobDir = Files.S.mkdirs(new File(workDir, "blobs"));
+    for (var edit : editLog.entries()) {
+      if (edit.code() != EditCode.MODIFY)
+        continue;
+      var blobFile = new File(blobDir, Integer.toString(modifyPaths.size()));
+      Files.S.writeString(blobFile, editLog.content(edit));
+      modifyPaths.add(edit.path());
+      pathsFile.append(blobFile.getPath()).append('\n');
+    }
+    if (modifyPaths.isEmpty())
+      return;
+
+    var blobPathsFile = new File(workDir, "blob_paths.txt");
+    Files.S.writeString(blobPathsFile, pathsFile.toString());
+    // --no-filters, since the contents came from the object database and are already normalized
+    var objects = split(
+        GitCommand.run(mProjectDir, blobPathsFile, null, "hash-object", "-w", "--no-filters", "--stdin-paths").trim(),
+        '\n');
+    checkState(objects.size() == modifyPaths.size(), "unexpected hash-object output");
+    for (int i = 0; i < modifyPaths.size(); i++) {
+      var relPath = modifyPaths.get(i);
+      indexInfo.append(mSource.mode(relPath)).append(' ').append(objects.get(i)).append('\t').append(relPath)
+          .append('\0');
+    }
+  }
+
+  private String git(String... args) {
+    return GitCommand.line(mProjectDir, args);
+  }
+
+  /**
+   * Construct an object name of all zeros, of the same length as the
+   * repository's object names (which depends upon its hash algorithm)
+   */
+  private static String zeroObject(String sampleObject) {
+    return "0".repeat(sampleObject.length());
+  }
+
+  private final File mProjectDir;
+  private final GitTreeSource mSource;
+}
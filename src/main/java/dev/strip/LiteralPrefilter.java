@@ -0,0 +1,132 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Determines whether text might contain a match for a set of token
+ * definitions, by searching it for the literals that every match must contain
+ * (see RequiredLiterals).
+ *
+ * The literals are searched for simultaneously, in a single pass, using an
+ * Aho-Corasick automaton whose failure transitions have been folded into its
+ * transition table
+ */
+public class LiteralPrefilter {
+
+  /**
+   * Construct a prefilter for some token definitions (in .rxp form)
+   *
+   * @return the prefilter, or null if the required literals couldn't be
+   *         determined
+   */
+  public static LiteralPrefilter forTokenDefinitions(String rxp) {
+    var literals = RequiredLiterals.forTokenDefinitions(rxp);
+    if (literals == null)
+      return null;
+    for (var s : literals)
+      for (int i = 0; i < s.length(); i++)
+        if (s.charAt(i) >= OTHER)
+          return null;
+    return new LiteralPrefilter(literals);
+  }
+
+  LiteralPrefilter(Collection<String> literals) {
+    mLiterals = arrayList();
+    mLiterals.addAll(literals);
+    buildAutomaton();
+  }
+
+  public List<String> literals() {
+    return mLiterals;
+  }
+
+  /**
+   * Determine if some text contains any of the literals (and thus might
+   * contain a match)
+   */
+  public boolean mayMatch(CharSequence text) {
+    var next = mNext;
+    var accept = mAccept;
+    int state = 0;
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      int c = text.charAt(i);
+      if (c > OTHER)
+        c = OTHER;
+      state = next[state * ALPHABET + c];
+      if (accept[state])
+        return true;
+    }
+    return false;
+  }
+
+  // Characters at or above this value don't appear in any literal, and are
+  // treated as a single symbol
+  //
+  private static final int OTHER = 128;
+  private static final int ALPHABET = OTHER + 1;
+
+  private void buildAutomaton() {
+    // Construct the trie of the literals
+    int maxStates = 1;
+    for (var s : mLiterals)
+      maxStates += s.length();
+    var next = new int[maxStates * ALPHABET];
+    Arrays.fill(next, -1);
+    var accept = new boolean[maxStates];
+    int stateCount = 1;
+    for (var s : mLiterals) {
+      int state = 0;
+      for (int i = 0; i < s.length(); i++) {
+        int index = state * ALPHABET + s.charAt(i);
+        if (next[index] < 0)
+          next[index] = stateCount++;
+        state = next[index];
+      }
+      accept[state] = true;
+    }
+
+    // Visit the states in breadth-first order, replacing each missing transition
+    // with the one from the state's failure state (the longest proper suffix of
+    // its string that is also in the trie)
+    var fail = new int[stateCount];
+    var queue = new int[stateCount];
+    int head = 0;
+    int tail = 0;
+    for (int c = 0; c < ALPHABET; c++) {
+      int target = next[c];
+      if (target < 0) {
+        next[c] = 0;
+      } else {
+        fail[target] = 0;
+        queue[tail++] = target;
+      }
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      // A state whose suffix is a literal also contains that literal
+      accept[state] |= accept[fail[state]];
+      for (int c = 0; c < ALPHABET; c++) {
+        int index = state * ALPHABET + c;
+        int target = next[index];
+        int failTarget = next[fail[state] * ALPHABET + c];
+        if (target < 0) {
+          next[index] = failTarget;
+        } else {
+          fail[target] = failTarget;
+          queue[tail++] = target;
+        }
+      }
+    }
+    mNext = Arrays.copyOf(next, stateCount * ALPHABET);
+    mAccept = Arrays.copyOf(accept, stateCount);
+  }
+
+  private final List<String> mLiterals;
+  private int[] mNext;
+  private boolean[] mAccept;
+}
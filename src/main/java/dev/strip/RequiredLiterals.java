@@ -0,0 +1,372 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Determines, for a set of token definitions (in .rxp form), a set of literal
+ * strings such that any text matched by one of the tokens contains at least one
+ * of them.
+ *
+ * The analysis is conservative: a construct that isn't understood is treated as
+ * able to match anything, and if some token might match text without
+ * containing a literal, there is no such set
+ */
+final class RequiredLiterals {
+
+  /**
+   * Get the required literals for some token definitions
+   *
+   * @return the literals, or null if none could be determined
+   */
+  static Set<String> forTokenDefinitions(String rxp) {
+    try {
+      return new RequiredLiterals().parse(rxp);
+    } catch (UnsupportedSyntaxException e) {
+      return null;
+    }
+  }
+
+  private RequiredLiterals() {
+  }
+
+  private Set<String> parse(String rxp) throws UnsupportedSyntaxException {
+    List<String> tokenNames = arrayList();
+    var definition = new StringBuilder();
+    for (var line : split(rxp, '\n')) {
+      var trimmed = line.trim();
+      if (definition.length() == 0 && (trimmed.isEmpty() || trimmed.startsWith("#")))
+        continue;
+      // A trailing backslash continues the definition on the next line
+      if (trimmed.endsWith("\\") && !trimmed.endsWith("\\\\")) {
+        definition.append(trimmed, 0, trimmed.length() - 1).append(' ');
+        continue;
+      }
+      definition.append(trimmed);
+      var name = addDefinition(definition.toString());
+      if (!name.startsWith("_"))
+        tokenNames.add(name);
+      definition.setLength(0);
+    }
+    if (definition.length() != 0)
+      throw unsupported();
+
+    Set<String> literals = new TreeSet<>();
+    for (var name : tokenNames) {
+      var best = best(info(name));
+      if (best == null)
+        return null;
+      literals.addAll(best);
+    }
+    return literals.isEmpty() ? null : literals;
+  }
+
+  private String addDefinition(String line) throws UnsupportedSyntaxException {
+    int colon = line.indexOf(':');
+    if (colon < 0)
+      throw unsupported();
+    var name = line.substring(0, colon).trim();
+    if (!name.matches("[A-Za-z_][A-Za-z_0-9]*") || mDefinitions.containsKey(name))
+      throw unsupported();
+    mDefinitions.put(name, line.substring(colon + 1));
+    return name;
+  }
+
+  /**
+   * What is known about the text matched by an expression
+   */
+  private static final class Info {
+
+    Info(Set<String> exact, Set<String> required) {
+      this.exact = exact;
+      this.required = required;
+    }
+
+    // Every match is one of these strings; null if unknown
+    final Set<String> exact;
+    // Every match contains one of these strings; null if unknown
+    final Set<String> required;
+  }
+
+  private static final Info UNKNOWN = new Info(null, null);
+
+  private Info info(String name) throws UnsupportedSyntaxException {
+    var info = mInfoForName.get(name);
+    if (info == null) {
+      var expr = mDefinitions.get(name);
+      if (expr == null || !mActiveNames.add(name))
+        throw unsupported();
+      var saveText = mText;
+      var savePos = mPos;
+      mText = expr;
+      mPos = 0;
+      info = parseDifference();
+      skipSpaces();
+      if (mPos != mText.length())
+        throw unsupported();
+      mText = saveText;
+      mPos = savePos;
+      mActiveNames.remove(name);
+      mInfoForName.put(name, info);
+    }
+    return info;
+  }
+
+  // The difference operator's right side only removes matches, so it can be
+  // ignored
+  //
+  private Info parseDifference() throws UnsupportedSyntaxException {
+    var result = parseAlternation();
+    while (readOperator("--"))
+      parseAlternation();
+    return result;
+  }
+
+  private Info parseAlternation() throws UnsupportedSyntaxException {
+    List<Info> choices = arrayList();
+    choices.add(parseConcatenation());
+    while (readOperator("|"))
+      choices.add(parseConcatenation());
+    if (choices.size() == 1)
+      return choices.get(0);
+
+    Set<String> exact = new TreeSet<>();
+    Set<String> required = new TreeSet<>();
+    for (var c : choices) {
+      if (exact != null && c.exact != null)
+        exact.addAll(c.exact);
+      else
+        exact = null;
+      var best = best(c);
+      if (required != null && best != null)
+        required.addAll(best);
+      else
+        required = null;
+    }
+    return new Info(limit(exact), limit(required));
+  }
+
+  private Info parseConcatenation() throws UnsupportedSyntaxException {
+    List<Info> items = arrayList();
+    while (true) {
+      skipSpaces();
+      if (mPos == mText.length() || peek(")") || peek("|") || peek("--"))
+        break;
+      items.add(parsePostfix());
+    }
+
+    // Each item's best set is a candidate, as is the concatenation of each run
+    // of items whose matches are known exactly
+    List<Set<String>> candidates = arrayList();
+    Set<String> exact = setOf("");
+    Set<String> run = exact;
+    for (var item : items) {
+      candidates.add(best(item));
+      if (item.exact == null) {
+        candidates.add(run);
+        run = setOf("");
+        exact = null;
+        continue;
+      }
+      var extended = product(run, item.exact);
+      if (extended == null) {
+        // Too many combinations; start a new run
+        candidates.add(run);
+        extended = item.exact;
+      }
+      run = extended;
+      if (exact != null)
+        exact = product(exact, item.exact);
+    }
+    candidates.add(run);
+
+    Set<String> required = exact;
+    for (var c : candidates)
+      if (quality(c) > quality(required))
+        required = c;
+    return new Info(exact, required);
+  }
+
+  private Info parsePostfix() throws UnsupportedSyntaxException {
+    var atom = parseAtom();
+    while (mPos < mText.length()) {
+      var c = mText.charAt(mPos);
+      if (c == '*') {
+        atom = UNKNOWN;
+      } else if (c == '?') {
+        Set<String> exact = null;
+        if (atom.exact != null) {
+          exact = new TreeSet<>(atom.exact);
+          exact.add("");
+        }
+        atom = new Info(exact, null);
+      } else if (c == '+') {
+        atom = new Info(null, best(atom));
+      } else
+        break;
+      mPos++;
+    }
+    return atom;
+  }
+
+  private Info parseAtom() throws UnsupportedSyntaxException {
+    var c = mText.charAt(mPos++);
+    switch (c) {
+    case '(': {
+      var result = parseDifference();
+      if (!readOperator(")"))
+        throw unsupported();
+      return result;
+    }
+    case '[':
+      skipCharacterClass();
+      return UNKNOWN;
+    case '.':
+      return UNKNOWN;
+    case '$': {
+      int start = mPos;
+      while (mPos < mText.length() && isNameChar(mText.charAt(mPos)))
+        mPos++;
+      return info(mText.substring(start, mPos));
+    }
+    case '\\': {
+      if (mPos == mText.length())
+        throw unsupported();
+      var e = mText.charAt(mPos++);
+      switch (e) {
+      case 'n':
+        return literal('\n');
+      case 't':
+        return literal('\t');
+      case 'r':
+        return literal('\r');
+      default:
+        // Other escaped letters and digits denote character classes
+        if (Character.isLetterOrDigit(e))
+          return UNKNOWN;
+        return literal(e);
+      }
+    }
+    default:
+      if (Character.isLetterOrDigit(c) || LITERAL_PUNCTUATION.indexOf(c) >= 0)
+        return literal(c);
+      throw unsupported();
+    }
+  }
+
+  // Punctuation that stands for itself when not escaped
+  //
+  private static final String LITERAL_PUNCTUATION = "_!;,:'\"=/<>@%&";
+
+  private void skipCharacterClass() throws UnsupportedSyntaxException {
+    while (true) {
+      if (mPos == mText.length())
+        throw unsupported();
+      var c = mText.charAt(mPos++);
+      if (c == '\\')
+        mPos++;
+      else if (c == ']')
+        break;
+    }
+  }
+
+  private static boolean isNameChar(char c) {
+    return c == '_' || Character.isLetterOrDigit(c);
+  }
+
+  private static Info literal(char c) {
+    var s = setOf(Character.toString(c));
+    return new Info(s, s);
+  }
+
+  private void skipSpaces() {
+    while (mPos < mText.length() && mText.charAt(mPos) <= ' ')
+      mPos++;
+  }
+
+  private boolean peek(String operator) {
+    return mText.startsWith(operator, mPos);
+  }
+
+  private boolean readOperator(String operator) {
+    skipSpaces();
+    if (!peek(operator))
+      return false;
+    mPos += operator.length();
+    return true;
+  }
+
+  /**
+   * Get the more useful of an expression's exact and required sets
+   */
+  private static Set<String> best(Info info) {
+    var result = info.exact;
+    if (quality(info.required) > quality(result))
+      result = info.required;
+    return quality(result) > 0 ? result : null;
+  }
+
+  /**
+   * Judge how selective a set of required literals is: by the length of its
+   * shortest literal, then by the number of literals. A set that is unknown, or
+   * that contains the empty string, has quality zero
+   */
+  private static int quality(Set<String> literals) {
+    if (literals == null || literals.isEmpty())
+      return 0;
+    int minLength = Integer.MAX_VALUE;
+    for (var s : literals)
+      minLength = Math.min(minLength, s.length());
+    if (minLength == 0)
+      return 0;
+    return Math.min(minLength, 1000) * (MAX_LITERALS + 1) + (MAX_LITERALS - literals.size());
+  }
+
+  private static Set<String> product(Set<String> a, Set<String> b) {
+    if (a.size() * b.size() > MAX_LITERALS)
+      return null;
+    Set<String> result = new TreeSet<>();
+    for (var x : a)
+      for (var y : b)
+        result.add(x + y);
+    return result;
+  }
+
+  private static Set<String> limit(Set<String> literals) {
+    if (literals != null && literals.size() > MAX_LITERALS)
+      return null;
+    return literals;
+  }
+
+  private static Set<String> setOf(String s) {
+    Set<String> result = new TreeSet<>();
+    result.add(s);
+    return result;
+  }
+
+  /**
+   * Thrown when a definition uses syntax that isn't understood
+   */
+  private static final class UnsupportedSyntaxException extends Exception {
+    UnsupportedSyntaxException() {
+      // There's no need for a stack trace, as it's always caught
+      super(null, null, false, false);
+    }
+  }
+
+  private static UnsupportedSyntaxException unsupported() {
+    return new UnsupportedSyntaxException();
+  }
+
+  private static final int MAX_LITERALS = 64;
+
+  private final Map<String, String> mDefinitions = hashMap();
+  private final Map<String, Info> mInfoForName = hashMap();
+  private final Set<String> mActiveNames = hashSet();
+  private String mText = "";
+  private int mPos;
+}
@@ -0,0 +1,27 @@
+package dev.strip;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The files that StripOper examines, identified by their absolute paths within
+ * the project directory: either the project's working tree, or the tree of a
+ * git commit.
+ *
+ * Implementations must be safe to use from multiple threads
+ */
+interface SourceTree {
+
+  boolean exists(File abs);
+
+  boolean isDirectory(File abs);
+
+  boolean isSymLink(File abs);
+
+  /**
+   * Get the files (and subdirectories) within a directory, without recursing
+   */
+  List<File> filesWithinDir(File absDir);
+
+  String readString(File abs);
+}
@@ -0,0 +1,193 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.Sha256;
+import js.base.BaseObject;
+import js.file.Files;
+
+/**
+ * A persistent cache of the results of filtering source files, so that files
+ * that haven't changed since a previous strip needn't be lexed again.
+ *
+ * Each result is stored in its own file, named by a hash of the source file's
+ * content and of the regular expressions that the filter was constructed from.
+ * It is thus unaffected by the file's path, and is shared by branches with
+ * identical copies of a file. This is safe to use from multiple threads.
+ *
+ * A result's modification time is updated whenever it is used, so trim() can
+ * delete the least recently used results to keep the cache within a size limit
+ */
+public class StripCache extends BaseObject {
+
+  /**
+   * Returned by get() if the filter found no matches within the text
+   */
+  public static final String NO_MATCHES = new String("(no matches)");
+
+  public StripCache(File directory, boolean readOnly) {
+    mDirectory = directory;
+    mReadOnly = readOnly;
+  }
+
+  /**
+   * Construct the key for filtering some text with a particular set of
+   * expressions
+   */
+  public static String key(String text, String expressionsHash) {
+    var md = Sha256.newDigest();
+    md.update(expressionsHash.getBytes(StandardCharsets.UTF_8));
+    md.update((byte) 0);
+    md.update(text.getBytes(StandardCharsets.UTF_8));
+    return Sha256.toHex(md.digest());
+  }
+
+  /**
+   * Calculate the hash of a set of expressions (in .rxp form)
+   */
+  public static String expressionsHash(String rxp) {
+    var md = Sha256.newDigest();
+    md.update((byte) FORMAT_VERSION);
+    md.update(rxp.getBytes(StandardCharsets.UTF_8));
+    return Sha256.toHex(md.digest());
+  }
+
+  /**
+   * Get the cached result for a key
+   *
+   * @return the filtered text, NO_MATCHES, or null if there is no cached result
+   */
+  public String get(String key) {
+    var f = fileForKey(key);
+    if (!f.exists()) {
+      mMisses.incrementAndGet();
+      return null;
+    }
+    var content = Files.readString(f);
+    if (content.isEmpty()) {
+      // Probably a truncated file; treat it as missing
+      mMisses.incrementAndGet();
+      return null;
+    }
+    mHits.incrementAndGet();
+    if (!mReadOnly)
+      f.setLastModified(System.currentTimeMillis());
+    if (content.charAt(0) == MARKER_NO_MATCHES)
+      return NO_MATCHES;
+    return content.substring(1);
+  }
+
+  /**
+   * Store the result of filtering
+   *
+   * @param filteredText
+   *          the filtered text, or null if the filter found no matches
+   */
+  public void put(String key, String filteredText) {
+    if (mReadOnly)
+      return;
+    var content = (filteredText == null) ? String.valueOf(MARKER_NO_MATCHES) : MARKER_FILTERED + filteredText;
+    var f = fileForKey(key);
+    Files.S.mkdirs(f.getParentFile());
+    // Write to a temporary file first, so a partially written result is never seen; its name
+    // is unique to this process and thread, as other processes may share the cache
+    var temp = new File(f.getParentFile(),
+        "_SKIP_" + key + "_" + ProcessHandle.current().pid() + "_" + Thread.currentThread().getId());
+    try {
+      java.nio.file.Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      java.nio.file.Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    mStored.incrementAndGet();
+  }
+
+  /**
+   * If any results have been stored since the last call, delete the least
+   * recently used results until the total size of those remaining is within a
+   * limit. This must not be called while other threads are using the cache
+   *
+   * @return the number of results deleted
+   */
+  public int trim(long maxBytes) {
+    if (mReadOnly || mStored.getAndSet(0) == 0)
+      return 0;
+    List<CachedResult> results = arrayList();
+    long totalBytes = 0;
+    var subdirs = mDirectory.listFiles(File::isDirectory);
+    if (subdirs == null)
+      return 0;
+    for (var dir : subdirs) {
+      var files = dir.listFiles((f) -> !f.getName().startsWith("_SKIP_"));
+      if (files == null)
+        continue;
+      for (var f : files) {
+        var result = new CachedResult(f, f.length(), f.lastModified());
+        results.add(result);
+        totalBytes += result.length;
+      }
+    }
+    if (totalBytes <= maxBytes)
+      return 0;
+
+    // Sort by the modification times read above, since another process may change them
+    results.sort(Comparator.comparingLong((r) -> r.lastModified));
+    int deleted = 0;
+    for (var r : results) {
+      if (totalBytes <= maxBytes)
+        break;
+      totalBytes -= r.length;
+      if (r.file.delete())
+        deleted++;
+    }
+    return deleted;
+  }
+
+  private static final class CachedResult {
+
+    CachedResult(File file, long length, long lastModified) {
+      this.file = file;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    final File file;
+    final long length;
+    final long lastModified;
+  }
+
+  public int hits() {
+    return mHits.get();
+  }
+
+  public int misses() {
+    return mMisses.get();
+  }
+
+  private File fileForKey(String key) {
+    // Use a level of subdirectories to avoid having many thousands of files in a single directory
+    return new File(mDirectory, key.substring(0, 2) + "/" + key);
+  }
+
+  // Incremented if the filtering algorithm changes in a way that affects its output
+  //
+  private static final int FORMAT_VERSION = 1;
+
+  private static final char MARKER_NO_MATCHES = '=';
+  private static final char MARKER_FILTERED = '~';
+
+  private final File mDirectory;
+  private final boolean mReadOnly;
+  private final AtomicInteger mHits = new AtomicInteger();
+  private final AtomicInteger mMisses = new AtomicInteger();
+  private final AtomicInteger mStored = new AtomicInteger();
+}
@@ -0,0 +1,174 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+
+import js.base.BaseObject;
+import js.json.JSUtils;
+import js.parsing.DFA;
+import js.parsing.Lexer;
+
+/**
+ * Filters text by removing the tokens matched by a DFA.
+ *
+ * Lines that consisted only of removed text (and whitespace) are omitted;
+ * within the remaining lines, whitespace preceding a visible character is
+ * replaced by an equal number of spaces, and trailing whitespace is removed.
+ * The result ends with a linefeed.
+ *
+ * The tokens are streamed through a LineWriter, which decides whether to retain
+ * each line when its linefeed arrives. Since a line is only omitted if nothing
+ * visible was written for it, the output never has to be revised
+ */
+public class StripFilter extends BaseObject {
+
+  public StripFilter(DFA dfa) {
+    mDfa = dfa;
+  }
+
+  /**
+   * Apply the filter to some text
+   *
+   * @return the filtered text, or null if the filter found no matches
+   */
+  public String apply(String text) {
+    var verbose = verbose();
+    var out = new LineWriter(text.length());
+    int matchesWithinFile = 0;
+
+    var s = new Lexer(mDfa).withText(text).withNoSkip().withAcceptUnknownTokens();
+
+    while (s.hasNext()) {
+      var tk = s.read();
+      var tkText = tk.text();
+      if (verbose) {
+        log("=== token:", mDfa.tokenName(tk.id()), JSUtils.valueToString(tkText));
+      }
+
+      if (tk.isUnknown()) {
+        // This text is to be left alone
+        out.write(tkText, 0, tkText.length());
+      } else {
+        if (verbose)
+          log("...found matching token");
+        matchesWithinFile++;
+
+        var tokenName = mDfa.tokenName(tk.id());
+        if (tokenName.startsWith("ALTERNATIVE")) {
+          procExcludeToken(tkText, out);
+        } else {
+          out.erase(tkText.length());
+        }
+      }
+    }
+
+    if (matchesWithinFile == 0)
+      return null;
+    return out.finish();
+  }
+
+  // The filter used to mark erased text with this character before discarding
+  // it in a second pass; to produce identical output, any occurrence of it
+  // within the source is still treated as erased text
+  //
+  static final char ERASE_CHAR = 0x7f;
+
+  private static final class LineWriter {
+
+    LineWriter(int capacity) {
+      mOut = new StringBuilder(capacity);
+    }
+
+    void write(CharSequence text, int start, int end) {
+      int i = start;
+      while (i < end) {
+        var c = text.charAt(i);
+        if (c == '\n') {
+          // If the line had some non-whitespace characters, or nothing was erased from it
+          if (mLineContainedChars || !mEraseFound)
+            mOut.append('\n');
+          mLineContainedChars = false;
+          mBufferedSpaceCount = 0;
+          mEraseFound = false;
+          i++;
+        } else if (c <= ' ') {
+          mBufferedSpaceCount++;
+          i++;
+        } else if (c == ERASE_CHAR) {
+          mEraseFound = true;
+          i++;
+        } else {
+          mLineContainedChars = true;
+          for (; mBufferedSpaceCount > 0; mBufferedSpaceCount--)
+            mOut.append(' ');
+          // Copy the run of visible characters in one operation
+          int runStart = i;
+          i++;
+          while (i < end) {
+            c = text.charAt(i);
+            if (c <= ' ' || c == ERASE_CHAR)
+              break;
+            i++;
+          }
+          mOut.append(text, runStart, i);
+        }
+      }
+      if (end > start)
+        mEndsWithLinefeed = text.charAt(end - 1) == '\n';
+    }
+
+    void erase(int length) {
+      if (length == 0)
+        return;
+      mEraseFound = true;
+      mEndsWithLinefeed = false;
+    }
+
+    String finish() {
+      // Ensure the text ends with a linefeed
+      if (!mEndsWithLinefeed)
+        write("\n", 0, 1);
+      return mOut.toString();
+    }
+
+    private final StringBuilder mOut;
+    private boolean mLineContainedChars;
+    private boolean mEraseFound;
+    private int mBufferedSpaceCount;
+    private boolean mEndsWithLinefeed;
+  }
+
+  private static int startOfLineContaining(String text, String pattern) {
+    var i = text.indexOf(pattern);
+    if (i >= 0) {
+      i += pattern.length();
+      while (i > 0 && text.charAt(i - 1) != '\n')
+        i--;
+    }
+    return i;
+  }
+
+  private static int endOfLineContaining(String text, String pattern) {
+    var i = text.indexOf(pattern);
+    if (i >= 0) {
+      i += pattern.length();
+      while (i < text.length() && text.charAt(i - 1) != '\n')
+        i++;
+    }
+    return i;
+  }
+
+  private static void procExcludeToken(String tokenText, LineWriter target) {
+    int altLoc = endOfLineContaining(tokenText, "~|~");
+    if (altLoc < 0) {
+      target.erase(tokenText.length());
+    } else {
+      int endLoc = startOfLineContaining(tokenText, "~}");
+      checkState(endLoc >= altLoc);
+      target.erase(altLoc);
+      target.write(tokenText, altLoc, endLoc);
+      target.erase(tokenText.length() - endLoc);
+    }
+  }
+
+  private final DFA mDfa;
+}
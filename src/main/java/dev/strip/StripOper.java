@@ -2,22 +2,39 @@ package dev.strip;
 
 import static js.base.Tools.*;
 
+import dev.DfaStore;
 import dev.gen.EditCode;
 import dev.gen.StripConfig;
 import js.app.AppOper;
 import js.app.HelpFormatter;
 import js.base.BasePrinter;
 import js.base.SystemCall;
-import js.file.DirWalk;
 import js.file.Files;
 import js.json.JSMap;
-import js.json.JSUtils;
 import js.parsing.DFA;
-import js.parsing.DFACache;
-import js.parsing.Lexer;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class StripOper extends AppOper {
 
@@ -104,8 +121,10 @@ public class StripOper extends AppOper {
       }
     }
 
-    checkArgument(nonEmpty(c.sourceBranch()), "source_branch is empty");
-    checkArgument(nonEmpty(c.targetBranch()), "target_branch is empty");
+    if (!c.watch()) {
+      checkArgument(nonEmpty(c.sourceBranch()), "source_branch is empty");
+      checkArgument(nonEmpty(c.targetBranch()), "target_branch is empty");
+    }
 
     files().withDryRun(dryRun());
     log("arguments:", INDENT, config());
@@ -218,109 +237,564 @@ public class StripOper extends AppOper {
       STRIP_OPER_ARGS_FILE);
 
   private void doStrip() {
+    if (config().watch()) {
+      watch();
+      return;
+    }
+    if (config().gitObjects()) {
+      stripGitObjects();
+      return;
+    }
+    mSourceTree = new WorkingTreeSource();
     selectSourceBranch();
-    var editsMap = generateEditsMap();
-    selectTargetBranch();
-    processEditsMap(editsMap);
-    if (dryRun()) {
-      selectSourceBranch();
+    var editLog = generateEditLog();
+    try {
+      selectTargetBranch();
+      processEditLog(editLog, projectDir());
+      if (dryRun()) {
+        selectSourceBranch();
+      }
+    } finally {
+      editLog.close();
     }
   }
 
-  private JSMap generateEditsMap() {
-    var initialState = prepareState();
-    List<FilterState> dirStack = arrayList();
-    dirStack.add(initialState);
-
-    while (!dirStack.isEmpty()) {
-      var state = pop(dirStack);
+  /**
+   * Read the source files from the source branch's tree, and commit the edited
+   * files to the target branch, without checking out either branch
+   */
+  private void stripGitObjects() {
+    checkArgument(!inTestMode(), "git_objects is not supported in test mode");
+    var target = config().targetBranch();
+    checkArgument(!currentGitBranch().equals(target), "target branch is checked out:", target);
+
+    var dir = projectDir();
+    var sourceCommit = GitCommand.line(dir, "rev-parse", "--verify", config().sourceBranch() + "^{commit}");
+    log("reading source files from commit:", sourceCommit);
+    var source = new GitTreeSource(dir, sourceCommit);
+    mSourceTree = source;
+    EditLog editLog = null;
+    try {
+      editLog = generateEditLog();
+      if (dryRun()) {
+        printEditLog(editLog);
+        return;
+      }
+      var message = "Strip " + config().sourceBranch() + " (" + sourceCommit + ")";
+      var commit = new GitTreeWriter(dir, source).commit(target, editLog, message);
+      if (commit == null)
+        pr("No changes to branch:", target);
+      else
+        pr("Committed to branch:", target, "=>", commit);
+    } finally {
+      source.close();
+      if (editLog != null)
+        editLog.close();
+    }
+  }
 
-      // If there's a .delete list, parse it and add those files to the delete list
-      var deleteListFile = new File(state.directory(), DELETE_FILES_LIST);
-      if (deleteListFile.exists()) {
-        var content = Files.readString(deleteListFile);
-        state = processDeleteList(state, content);
+  /**
+   * Strip the project's working tree into the target directory, then continue
+   * to run, applying the edits for the source files as they change
+   */
+  private void watch() {
+    var targetDir = Files.assertDirectoryExists(config().targetDir(), "target_dir").getAbsoluteFile();
+    checkArgument(!targetDir.equals(projectDir()), "target_dir is the project directory");
+    mSourceTree = new WorkingTreeSource();
+    mTargetDir = targetDir;
+    stripIntoTarget();
+
+    try (var watcher = FileSystems.getDefault().newWatchService()) {
+      registerTree(watcher, projectDir());
+      pr("Watching for changes within:", projectDir(), "=>", targetDir);
+      var testChanges = sTestChanges;
+      while (true) {
+        Set<File> changes;
+        if (testChanges != null) {
+          changes = testChanges.get();
+          if (changes == null)
+            break;
+        } else {
+          changes = takeChanges(watcher);
+          if (changes == null) {
+            // Events were lost, so we don't know what changed
+            pr("*** watch events overflowed; stripping entire project");
+            stripIntoTarget();
+            continue;
+          }
+        }
+        if (!changes.isEmpty())
+          processChanges(watcher, changes);
       }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    } catch (InterruptedException e) {
+      throw asRuntimeException(e);
+    }
+  }
 
-      // Examine the files (or subdirectories) within this directory (without recursing).
-      // If an explicit file list exists, parse that for the list of files instead.
-      // The result is a list of files or directories, relative to the current entry's directory
+  /**
+   * If not null, watch mode gets each set of changed paths from this, rather
+   * than from the file system, and stops when it supplies null
+   */
+  public /* for tests */ static Supplier<Set<File>> sTestChanges;
 
-      var listOfFiles = constructFilesWithinDirAbs(state.directory());
+  /**
+   * Examine the entire project, and apply the edits to the target directory
+   * (including deleting any target files whose sources no longer exist)
+   */
+  private void stripIntoTarget() {
+    var editLog = generateEditLog();
+    try {
+      recordOrphanedTargetFiles();
+      processEditLog(editLog, mTargetDir);
+    } finally {
+      editLog.close();
+    }
+  }
 
-      for (var abs : listOfFiles) {
+  /**
+   * Record the deletion of files (and directories) within the target directory
+   * whose sources don't exist, e.g. because they were deleted while we weren't
+   * watching
+   */
+  private void recordOrphanedTargetFiles() {
+    var targetRoot = mTargetDir.toPath();
+    try {
+      java.nio.file.Files.walkFileTree(targetRoot, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+          if (d.equals(targetRoot))
+            return FileVisitResult.CONTINUE;
+          if (d.getFileName().toString().equals(".git"))
+            return FileVisitResult.SKIP_SUBTREE;
+          return recordIfOrphaned(d) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+        }
 
-        if (!config().includeSymlinks()) {
-          // If the file (or dir) is a symlink, don't process it
-          if (isSymLink(abs))
-            continue;
+        @Override
+        public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+          recordIfOrphaned(f);
+          return FileVisitResult.CONTINUE;
         }
+      });
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
 
-        var relativeToProject = Files.relativeToContainingDirectory(abs, projectDir());
+  private boolean recordIfOrphaned(Path targetPath) {
+    var rel = Files.relativeToContainingDirectory(targetPath.toFile(), mTargetDir);
+    if (new File(projectDir(), rel.getPath()).exists())
+      return false;
+    log("source no longer exists:", rel);
+    recordEdit(mEditLog.newEntry(rel, EditCode.DELETE, ""));
+    return true;
+  }
 
-        if (abs.getName().equals(PROJECT_INFO_FILE)) {
-          var truePath = projectInfoFilePath();
-          if (!abs.equals(truePath)) {
-            setError("Encountered an unused project info file:", INDENT, abs, OUTDENT, "The effective one would be at:", INDENT, truePath);
+  /**
+   * Register the watcher with a directory and all of its subdirectories (other
+   * than git's, and the target's)
+   */
+  private void registerTree(WatchService watcher, File dir) throws IOException {
+    java.nio.file.Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+        if (ignoreWatchedPath(d.toFile()))
+          return FileVisitResult.SKIP_SUBTREE;
+        var key = d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        mWatchedDirs.put(key, d);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private boolean ignoreWatchedPath(File abs) {
+    if (isWithinDir(abs, mTargetDir))
+      return true;
+    for (var f = abs; f != null && !f.equals(projectDir()); f = f.getParentFile())
+      if (f.getName().equals(".git"))
+        return true;
+    return false;
+  }
+
+  private static boolean isWithinDir(File abs, File dir) {
+    var path = abs.getPath();
+    var dirPath = dir.getPath();
+    return path.equals(dirPath) || path.startsWith(dirPath + File.separator);
+  }
+
+  /**
+   * Wait for some paths to change, and then collect any further changes that
+   * arrive shortly afterward (e.g., as an editor saves a file, or a branch is
+   * checked out)
+   *
+   * @return the changed paths, or null if some events were lost
+   */
+  private Set<File> takeChanges(WatchService watcher) throws InterruptedException {
+    Set<File> changes = new TreeSet<>();
+    boolean overflow = false;
+    var key = watcher.take();
+    while (key != null) {
+      var dir = mWatchedDirs.get(key);
+      for (var event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+          overflow = true;
+        else if (dir != null) {
+          var abs = dir.resolve((Path) event.context()).toFile();
+          if (!ignoreWatchedPath(abs))
+            changes.add(abs);
+        }
+      }
+      if (!key.reset())
+        mWatchedDirs.remove(key);
+      key = watcher.poll(WATCH_SETTLE_MS, TimeUnit.MILLISECONDS);
+    }
+    return overflow ? null : changes;
+  }
+
+  private static final long WATCH_SETTLE_MS = 50;
+
+  /**
+   * Examine the paths that have changed, and apply the resulting edits to the
+   * target directory
+   */
+  private void processChanges(WatchService watcher, Set<File> changes) throws IOException {
+    if (changes.contains(projectInfoFilePath())) {
+      // The expressions may have changed for every file extension
+      pr("Project info file changed; stripping entire project");
+      mDFAForFileExtensionMap = null;
+      mRXPContentForFileExtensionMap.clear();
+      mExpressionsHashForFileExtensionMap.clear();
+      mPrefilterForFileExtensionMap.clear();
+      stripIntoTarget();
+      return;
+    }
+
+    prepareToExamine();
+    mEditLog = newEditLog();
+    try {
+      // Directories whose entire subtree has been examined in this pass
+      List<File> examinedDirs = arrayList();
+      // The changes are sorted, so a directory precedes the paths within it
+      for (var abs : changes) {
+        boolean examined = false;
+        for (var d : examinedDirs)
+          examined |= isWithinDir(abs, d);
+        if (examined)
+          continue;
+
+        var name = abs.getName();
+        var dir = abs.getParentFile();
+        if (name.equals(DELETE_FILES_LIST) || name.equals(EXPLICIT_FILES_LIST)) {
+          // These affect everything within the directory, so examine all of it
+          var state = stateForDirectory(dir);
+          if (state != null) {
+            log("control file changed:", abs);
+            examineTree(state);
+            examinedDirs.add(dir);
           }
+          continue;
         }
-        if (ALWAYS_DELETE_THESE_FILES.contains(abs.getName()) || state.deleteFilesAbs().contains(abs)) {
-          log("..........filtering entire file or dir:", relativeToProject);
-          recordEdit(relativeToProject, EditCode.DELETE, "");
+
+        var relativeToProject = Files.relativeToContainingDirectory(abs, projectDir());
+        if (!abs.exists()) {
+          // Remove it from the target as well, if the target's copy is one we manage
+          if (stateForDirectory(dir) != null)
+            recordEdit(mEditLog.newEntry(relativeToProject, EditCode.DELETE, ""));
           continue;
         }
 
-        if (!abs.isDirectory()) {
-          var editMade = false;
-          var ext = Files.getExtension(abs);
-          var dfa = dfaForExtension(ext);
-          String currText = null;
-          if (dfa != null) {
-            log("file:", relativeToProject);
-            currText = Files.readString(abs);
-            applyFilter(currText, dfa, verbose());
-            if (mMatchesWithinFile != 0) {
-              editMade = true;
-              currText = mNewText.toString();
-            }
-          }
+        var state = containingState(abs);
+        if (state == null)
+          continue;
+        var edit = examineEntry(state, abs);
+        if (edit == DESCEND) {
+          // A new directory (or one whose contents were replaced)
+          registerTree(watcher, abs);
+          examineTree(state.descendInto(abs));
+          examinedDirs.add(abs);
+        } else if (edit != null)
+          recordEdit(edit);
+      }
+      if (mEditLog.size() != 0) {
+        pr("Changed paths:", changes.size(), "edits:", mEditLog.size());
+        processEditLog(mEditLog, mTargetDir);
+      }
+    } finally {
+      mEditLog.close();
+    }
+  }
 
-          if (!editMade && !fileWithinExcludeList(abs)) {
-            editMade = true;
-          }
+  /**
+   * Determine the state of a directory that the traversal would examine the
+   * directory's contents with, or null if the traversal wouldn't reach it
+   */
+  private FilterState stateForDirectory(File dir) {
+    if (dir.equals(projectDir()))
+      return applyDeleteList(prepareState());
+    var state = containingState(dir);
+    if (state == null || examineEntry(state, dir) != DESCEND)
+      return null;
+    return applyDeleteList(state.descendInto(dir));
+  }
 
-          if (editMade) {
-            if (currText == null)
-              currText = Files.readString(abs);
-            recordEdit(relativeToProject, EditCode.MODIFY, currText);
-          }
-        } else {
-          var newEnt = state.descendInto(abs);
-          log("...descending into dir");
-          push(dirStack, newEnt);
+  /**
+   * Determine the state of the directory whose traversal examines a file (or
+   * subdirectory), or null if the traversal wouldn't reach it. This follows the
+   * traversal's path from the project directory, so the .delete and .files
+   * lists along the way are respected
+   */
+  private FilterState containingState(File abs) {
+    var state = applyDeleteList(prepareState());
+    while (true) {
+      File next = null;
+      for (var f : constructFilesWithinDirAbs(state.directory())) {
+        if (f.equals(abs))
+          return state;
+        if (isWithinDir(abs, f))
+          next = f;
+      }
+      if (next == null || examineEntry(state, next) != DESCEND)
+        return null;
+      state = applyDeleteList(state.descendInto(next));
+    }
+  }
+
+  private File mTargetDir;
+  private Map<WatchKey, Path> mWatchedDirs = hashMap();
+
+  private EditLog generateEditLog() {
+    prepareToExamine();
+    mEditLog = newEditLog();
+    examineTree(prepareState());
+    if (mStripCache != null) {
+      log("filter cache hits:", mStripCache.hits(), "misses:", mStripCache.misses());
+      int trimmed = mStripCache.trim(((long) config().cacheLimitMb()) << 20);
+      if (trimmed != 0)
+        log("filter cache results deleted:", trimmed);
+    }
+    if (!mPrefilterForFileExtensionMap.isEmpty())
+      log("prefilter skipped:", mPrefilterSkipped.get(), "lexed:", mPrefilterPassed.get());
+    if (mEditLog.spilledCount() != 0)
+      log("edits spilled to disk:", mEditLog.spilledCount(), "of", mEditLog.size());
+
+    var stats = map();
+    stats.put("edits", mEditLog.size());
+    stats.put("edits_spilled", mEditLog.spilledCount());
+    stats.put("workers", mWorkerCount);
+    stats.put("prefilter_skipped", mPrefilterSkipped.get());
+    stats.put("prefilter_lexed", mPrefilterPassed.get());
+    if (mStripCache != null) {
+      stats.put("cache_hits", mStripCache.hits());
+      stats.put("cache_misses", mStripCache.misses());
+    }
+    sLastStats = stats;
+    return mEditLog;
+  }
+
+  /**
+   * Get statistics about the files examined by the most recent strip
+   */
+  public /* for tests */ static JSMap lastStats() {
+    return sLastStats;
+  }
+
+  private static volatile JSMap sLastStats = map();
+
+  /**
+   * Construct the structures needed to examine files (before any worker threads
+   * need them)
+   */
+  private void prepareToExamine() {
+    prepareRegEx();
+    excludeExtensionsSet();
+    if (!config().noCache() && mStripCache == null)
+      mStripCache = new StripCache(new File(cacheDir(), "filter_results"), dryRun());
+  }
+
+  private EditLog newEditLog() {
+    return new EditLog(((long) config().editsMemoryMb()) << 20);
+  }
+
+  /**
+   * Examine the files within a state's directory and its subdirectories,
+   * recording the edits in the edit log
+   */
+  private void examineTree(FilterState initialState) {
+    int threads = threadCount();
+    mWorkerCount = 1;
+    if (threads <= 1) {
+      List<FilterState> dirStack = arrayList();
+      dirStack.add(initialState);
+      while (!dirStack.isEmpty()) {
+        var state = applyDeleteList(pop(dirStack));
+        for (var abs : constructFilesWithinDirAbs(state.directory())) {
+          var edit = examineEntry(state, abs);
+          if (edit == DESCEND) {
+            log("...descending into dir");
+            push(dirStack, state.descendInto(abs));
+          } else if (edit != null)
+            recordEdit(edit);
         }
       }
+    } else {
+      log("examining files using", threads, "threads");
+      var pool = new ForkJoinPool(threads);
+      try {
+        for (var edit : pool.invoke(new DirectoryTask(initialState)))
+          recordEdit(edit);
+        mWorkerCount = pool.getPoolSize();
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  private int mWorkerCount;
+
+  private int threadCount() {
+    int threads = config().threads();
+    if (threads <= 0)
+      threads = Runtime.getRuntime().availableProcessors();
+    return threads;
+  }
+
+  /**
+   * If there's a .delete list in a state's directory, parse it and add those
+   * files to the delete list
+   */
+  private FilterState applyDeleteList(FilterState state) {
+    var deleteListFile = new File(state.directory(), DELETE_FILES_LIST);
+    if (mSourceTree.exists(deleteListFile)) {
+      var content = mSourceTree.readString(deleteListFile);
+      state = processDeleteList(state, content);
+    }
+    return state;
+  }
+
+  /**
+   * Determine what is to be done with a file (or subdirectory) within a state's
+   * directory.
+   *
+   * Returns null if nothing is to be done, DESCEND if it is a subdirectory to be
+   * descended into, otherwise the edit to be made. This is safe to call from
+   * multiple threads
+   */
+  private EditLog.Entry examineEntry(FilterState state, File abs) {
+    if (!config().includeSymlinks()) {
+      // If the file (or dir) is a symlink, don't process it
+      if (mSourceTree.isSymLink(abs))
+        return null;
+    }
+
+    var relativeToProject = Files.relativeToContainingDirectory(abs, projectDir());
+
+    if (abs.getName().equals(PROJECT_INFO_FILE)) {
+      var truePath = projectInfoFilePath();
+      if (!abs.equals(truePath)) {
+        setError("Encountered an unused project info file:", INDENT, abs, OUTDENT, "The effective one would be at:", INDENT, truePath);
+      }
+    }
+    if (ALWAYS_DELETE_THESE_FILES.contains(abs.getName()) || state.deleteFilesAbs().contains(abs)) {
+      log("..........filtering entire file or dir:", relativeToProject);
+      return mEditLog.newEntry(relativeToProject, EditCode.DELETE, "");
+    }
+
+    if (mSourceTree.isDirectory(abs))
+      return DESCEND;
+
+    var editMade = false;
+    var ext = Files.getExtension(abs);
+    var dfa = dfaForExtension(ext);
+    String currText = null;
+    if (dfa != null) {
+      log("file:", relativeToProject);
+      currText = mSourceTree.readString(abs);
+      var filteredText = filter(currText, ext, dfa);
+      if (filteredText != null) {
+        editMade = true;
+        currText = filteredText;
+      }
+    }
+
+    if (!editMade && !fileWithinExcludeList(abs)) {
+      editMade = true;
     }
-    return mEditsMap;
+
+    if (!editMade)
+      return null;
+    if (currText == null)
+      currText = mSourceTree.readString(abs);
+    return mEditLog.newEntry(relativeToProject, EditCode.MODIFY, currText);
   }
 
+  /**
+   * Examines a directory's files concurrently, and forks a task for each of its
+   * subdirectories.
+   *
+   * The edits are returned in the same order that the single-threaded traversal
+   * produces them: the directory's own edits in order, followed by those of its
+   * subdirectories, last subdirectory first (as they would be popped from the
+   * stack)
+   */
+  private final class DirectoryTask extends RecursiveTask<List<EditLog.Entry>> {
+
+    DirectoryTask(FilterState state) {
+      mState = state;
+    }
+
+    @Override
+    protected List<EditLog.Entry> compute() {
+      var state = applyDeleteList(mState);
+      var listOfFiles = constructFilesWithinDirAbs(state.directory());
+
+      // Lex the files concurrently
+      List<ForkJoinTask<EditLog.Entry>> entryTasks = arrayList();
+      for (var abs : listOfFiles)
+        entryTasks.add(ForkJoinTask.adapt(() -> examineEntry(state, abs)).fork());
+
+      List<EditLog.Entry> edits = arrayList();
+      List<DirectoryTask> subdirTasks = arrayList();
+      for (int i = 0; i < listOfFiles.size(); i++) {
+        var abs = listOfFiles.get(i);
+        var edit = entryTasks.get(i).join();
+        if (edit == DESCEND) {
+          var subdirTask = new DirectoryTask(state.descendInto(abs));
+          subdirTask.fork();
+          subdirTasks.add(subdirTask);
+        } else if (edit != null)
+          edits.add(edit);
+      }
+      for (int i = subdirTasks.size() - 1; i >= 0; i--)
+        edits.addAll(subdirTasks.get(i).join());
+      return edits;
+    }
+
+    private final FilterState mState;
+  }
+
+  // Returned by examineEntry() for a subdirectory that is to be descended into
+  //
+  private static final EditLog.Entry DESCEND = new EditLog.Entry(null, null, null, 0, 0);
+
   /**
    * Get list of files (or subdirectories) within a directory to extend the filter traversal to.
    * If an explict file list exists, parse that for the list of files instead.
    */
   private List<File> constructFilesWithinDirAbs(File dir) {
     var explicitFileList = new File(dir, EXPLICIT_FILES_LIST);
-    if (explicitFileList.exists()) {
+    if (mSourceTree.exists(explicitFileList)) {
       Set<File> setOfFiles = hashSet();
-      var content = Files.readString(explicitFileList);
+      var content = mSourceTree.readString(explicitFileList);
       for (var line : parseLinesFromTextFile(content)) {
         var candidateFile = new File(dir, line);
-        if (candidateFile.exists())
+        if (mSourceTree.exists(candidateFile))
           setOfFiles.add(candidateFile);
       }
       List<File> listOfFiles = arrayList();
       for (var x : setOfFiles) {
-        if (x.exists()) {
+        if (mSourceTree.exists(x)) {
           listOfFiles.add(x);
         }
       }
@@ -328,15 +802,10 @@ public class StripOper extends AppOper {
       log("resulting files:", INDENT, niceList(listOfFiles));
       return listOfFiles;
     } else {
-      var walk = new DirWalk(dir).withRecurse(false).includeDirectories();
-      return walk.files();
+      return mSourceTree.filesWithinDir(dir);
     }
   }
 
-  private static boolean isSymLink(File f) {
-    return !f.getAbsoluteFile().equals(Files.getCanonicalFile(f));
-  }
-
   public static JSMap niceList(Collection<File> lst) {
     var m = map();
     for (var f : lst) {
@@ -353,91 +822,51 @@ public class StripOper extends AppOper {
     return m;
   }
 
-  private static final char ERASE_CHAR = 0x7f;
-
-  private void applyFilter(String currText, DFA dfa, boolean verbose) {
-
-    var filteredText = new StringBuilder();
-    mMatchesWithinFile = 0;
-
-    var s = new Lexer(dfa).withText(currText).withNoSkip().withAcceptUnknownTokens();
-
-    while (s.hasNext()) {
-      var tk = s.read();
-      var tkText = tk.text();
-      if (verbose) {
-        log("=== token:", dfa.tokenName(tk.id()), JSUtils.valueToString(tkText));
-      }
-      var tokenTextLength = tkText.length();
-
-      if (tk.isUnknown()) {
-        // This text is to be left alone
-        filteredText.append(tkText);
-      } else {
-        if (verbose) log("...found matching token");
-        mMatchesWithinFile++;
-
-
-        var tokenName = dfa.tokenName(tk.id());
-        if (tokenName.startsWith("ALTERNATIVE")) {
-          procExcludeToken(tkText, filteredText);
-        } else {
-          erase(filteredText, tokenTextLength);
-        }
-      }
-    }
-
-    mNewText = filteredText;
-    if (mMatchesWithinFile != 0)
-      pass2();
-  }
-
-
-  private static void erase(StringBuilder target, int len) {
-    target.append(String.valueOf(ERASE_CHAR).repeat(len));
+  /**
+   * Apply the filter to a file's text
+   *
+   * @return the filtered text, or null if the filter found no matches
+   */
+  private String applyFilter(String currText, DFA dfa, boolean verbose) {
+    var filter = new StripFilter(dfa);
+    filter.setVerbose(verbose);
+    return filter.apply(currText);
   }
 
-  private void pass2() {
-    var s = mNewText;
-    // Ensure file ends with linefeed
-    addLF(s);
-
-    var out = new StringBuilder();
-
-    var lineContainedChars = false;
-    int bufferedSpaceCount = 0;
-    var eraseFound = false;
-    int i = 0;
-    while (i < s.length()) {
-      var c = s.charAt(i++);
-      if (c == '\n') {
-        // If the line had some non-whitespace characters
-        if (lineContainedChars || !eraseFound) {
-          out.append('\n');
-        }
-        lineContainedChars = false;
-        bufferedSpaceCount = 0;
-        eraseFound = false;
-      } else if (c <= ' ') {
-        bufferedSpaceCount++;
-      } else if (c == ERASE_CHAR) {
-        eraseFound = true;
-      } else {
-        lineContainedChars = true;
-        out.append(spaces(bufferedSpaceCount));
-        bufferedSpaceCount = 0;
-        out.append(c);
+  /**
+   * Apply the filter for a file extension to some text, using the cached result
+   * if there is one
+   *
+   * @return the filtered text, or null if the filter found no matches
+   */
+  private String filter(String text, String ext, DFA dfa) {
+    var prefilter = mPrefilterForFileExtensionMap.get(ext);
+    if (prefilter != null) {
+      if (!prefilter.mayMatch(text)) {
+        mPrefilterSkipped.incrementAndGet();
+        return null;
       }
+      mPrefilterPassed.incrementAndGet();
+    }
+    var cache = mStripCache;
+    if (cache == null)
+      return applyFilter(text, dfa, verbose());
+    var key = StripCache.key(text, mExpressionsHashForFileExtensionMap.get(ext));
+    var result = cache.get(key);
+    if (result == null) {
+      result = applyFilter(text, dfa, verbose());
+      cache.put(key, result);
+      return result;
     }
-    mNewText.setLength(0);
-    mNewText.append(out);
+    if (result == StripCache.NO_MATCHES)
+      return null;
+    return result;
   }
 
   private StripConfig mConfig;
   private File mCacheDir;
-
-  private int mMatchesWithinFile;
-  private StringBuilder mNewText;
+  private StripCache mStripCache;
+  private SourceTree mSourceTree;
 
   private Map<String, DFA> prepareRegEx() {
     var dfaMap = mDFAForFileExtensionMap;
@@ -474,10 +903,7 @@ public class StripOper extends AppOper {
       // Construct DFAs from each extension
       {
         var v = verbose() && false;
-        var dfaCache = DFACache.SHARED_INSTANCE;
-        dfaCache.withCacheDir(Files.getDesktopFile("_prepoper_dfa_cache_"));
-        if (v)
-          dfaCache.setVerbose();
+        var dfaStore = DfaStore.forDirectory(config().dfaStore());
 
         log("Constructing dfas from rxp", CR, DASHES);
         for (var ent : mRXPContentForFileExtensionMap.entrySet()) {
@@ -485,12 +911,22 @@ public class StripOper extends AppOper {
           String rxp = ent.getValue().toString();
           if (v) log("Constructing DFA for extension:", ext);
           if (v) log("rxp file:", INDENT, rxp);
-          var dfa = dfaCache.forTokenDefinitions(rxp);
+          var dfa = dfaStore.forTokenDefinitions(rxp);
           if (v) {
             log("dfa file:", INDENT, dfa.toJson().remove("graph"));
             log(DASHES);
           }
           dfaMap.put(ext, dfa);
+          mExpressionsHashForFileExtensionMap.put(ext, StripCache.expressionsHash(rxp));
+          if (!config().noPrefilter()) {
+            var prefilter = LiteralPrefilter.forTokenDefinitions(rxp);
+            if (prefilter == null)
+              log("no prefilter for extension:", ext);
+            else {
+              log("prefilter literals for extension:", ext, INDENT, prefilter.literals());
+              mPrefilterForFileExtensionMap.put(ext, prefilter);
+            }
+          }
         }
       }
     }
@@ -502,9 +938,9 @@ public class StripOper extends AppOper {
     log("reading project info file");
     String content;
     var infoFile = projectInfoFilePath();
-    log("project info file:", INDENT, Files.infoMap(infoFile));
-    if (infoFile.exists()) {
-      content = Files.readString(infoFile);
+    log("project info file:", INDENT, infoFile);
+    if (mSourceTree.exists(infoFile)) {
+      content = mSourceTree.readString(infoFile);
     } else {
       log("no file found, using default");
       content = defaultExpressionsContent();
@@ -533,6 +969,10 @@ public class StripOper extends AppOper {
   }
 
   private Map<String, StringBuilder> mRXPContentForFileExtensionMap = hashMap();
+  private Map<String, String> mExpressionsHashForFileExtensionMap = hashMap();
+  private Map<String, LiteralPrefilter> mPrefilterForFileExtensionMap = hashMap();
+  private final AtomicInteger mPrefilterSkipped = new AtomicInteger();
+  private final AtomicInteger mPrefilterPassed = new AtomicInteger();
 
   private static List<String> parseLinesFromTextFile(String text) {
 
@@ -589,17 +1029,20 @@ public class StripOper extends AppOper {
 
   private Map<String, DFA> mDFAForFileExtensionMap;
 
-  private void recordEdit(File relFile, EditCode code, String content) {
-    log("record edit:", code, relFile);
-    var s = code + "::" + content;
-    mEditsMap.put(relFile.toString(), s);
+  private void recordEdit(EditLog.Entry edit) {
+    log("record edit:", edit.code(), edit.path());
+    mEditLog.add(edit);
   }
 
-  private JSMap mEditsMap = map();
+  private EditLog mEditLog;
 
 
   private boolean fileWithinExcludeList(File f) {
     var name = f.getName();
+    return excludeExtensionsSet().contains(name);
+  }
+
+  private Set<String> excludeExtensionsSet() {
     var s = mExcludeExtensionsSet;
     if (s == null) {
       s = hashSet();
@@ -607,41 +1050,33 @@ public class StripOper extends AppOper {
           config().excludeExtensions(), ','));
       mExcludeExtensionsSet = s;
     }
-    return s.contains(name);
-
+    return s;
   }
 
   private Set<String> mExcludeExtensionsSet;
 
-  private void processEditsMap(JSMap editsMap) {
+  /**
+   * Apply the edits to the target: first the deletions, then the creation of
+   * any missing parent directories, and then the writing of modified files
+   * (which is done concurrently)
+   */
+  private void processEditLog(EditLog editLog, File targetRoot) {
     if (dryRun()) {
       if (!inTestMode()) {
-        pr("dry run; edits map:", INDENT, editsMap);
-        var editsMapSuccinct = map();
-        for (var key : editsMap.keySet()
-        ) {
-          var value = editsMap.get(key);
-          var i = value.indexOf("::");
-          if (i > 0)
-            value = value.substring(0, i);
-          editsMapSuccinct.put(key, value);
-        }
-        pr("succinct version:", INDENT, editsMapSuccinct);
+        printEditLog(editLog);
       }
       return;
     }
-    for (var relPath : editsMap.keySet()) {
-      var targetFile = new File(projectDir(), relPath);
-      var arg = editsMap.get(relPath);
-      var i = arg.indexOf("::");
-      var cmd = arg.substring(0, i);
-      var content = arg.substring(i + 2);
 
-      var ec = EditCode.valueOf(cmd);
+    long startTime = System.currentTimeMillis();
+    List<EditLog.Entry> modifications = arrayList();
+    for (var edit : editLog.entries()) {
+      var ec = edit.code();
       switch (ec) {
         default:
-          throw notSupported("edit code:", ec, "for:", arg);
-        case DELETE:
+          throw notSupported("edit code:", ec, "for:", edit.path());
+        case DELETE: {
+          var targetFile = new File(targetRoot, edit.path());
           if (targetFile.exists()) {
             if (targetFile.isDirectory()) {
               files().deleteDirectory(targetFile);
@@ -650,45 +1085,85 @@ public class StripOper extends AppOper {
             }
           }
           break;
+        }
         case MODIFY:
-          files().writeString(targetFile, content);
+          modifications.add(edit);
           break;
       }
     }
-  }
-
-  private static int startOfLineContaining(String text, String pattern) {
-    var i = text.indexOf(pattern);
-    if (i >= 0) {
-      i += pattern.length();
-      while (i > 0 && text.charAt(i - 1) != '\n')
-        i--;
+    long deleteTime = System.currentTimeMillis();
+
+    Set<File> parentDirs = hashSet();
+    for (var edit : modifications)
+      parentDirs.add(new File(targetRoot, edit.path()).getParentFile());
+    for (var dir : parentDirs)
+      files().mkdirs(dir);
+    long mkdirsTime = System.currentTimeMillis();
+
+    var unchangedCount = new AtomicInteger();
+    int threads = threadCount();
+    if (threads <= 1) {
+      for (var edit : modifications)
+        applyModification(editLog, edit, targetRoot, unchangedCount);
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        List<Future<?>> futures = arrayList();
+        for (var edit : modifications)
+          futures.add(executor.submit(() -> applyModification(editLog, edit, targetRoot, unchangedCount)));
+        for (Future<?> f : futures) {
+          try {
+            f.get();
+          } catch (ExecutionException e) {
+            throw asRuntimeException(e.getCause());
+          } catch (InterruptedException e) {
+            throw asRuntimeException(e);
+          }
+        }
+      } finally {
+        executor.shutdownNow();
+      }
     }
-    return i;
+    long writeTime = System.currentTimeMillis();
+
+    log("Applied edits; deleted:", editLog.size() - modifications.size(), "written:",
+        modifications.size() - unchangedCount.get(), "unchanged:", unchangedCount.get());
+    log("  delete ms:", deleteTime - startTime, "mkdirs ms:", mkdirsTime - deleteTime, "write ms:",
+        writeTime - mkdirsTime);
   }
 
-  private static int endOfLineContaining(String text, String pattern) {
-    var i = text.indexOf(pattern);
-    if (i >= 0) {
-      i += pattern.length();
-      while (i < text.length() && text.charAt(i - 1) != '\n')
-        i++;
+  /**
+   * Write a modified file, unless the target already has the same content
+   */
+  private void applyModification(EditLog editLog, EditLog.Entry edit, File targetRoot,
+      AtomicInteger unchangedCount) {
+    var targetFile = new File(targetRoot, edit.path());
+    var content = editLog.content(edit);
+    if (targetFile.isFile()) {
+      var bytes = content.getBytes(StandardCharsets.UTF_8);
+      if (targetFile.length() == bytes.length) {
+        try {
+          if (Arrays.equals(java.nio.file.Files.readAllBytes(targetFile.toPath()), bytes)) {
+            unchangedCount.incrementAndGet();
+            return;
+          }
+        } catch (IOException e) {
+          throw Files.asFileException(e);
+        }
+      }
     }
-    return i;
+    files().writeString(targetFile, content);
   }
 
-  private static void procExcludeToken(String tokenText, StringBuilder target) {
-    int altLoc = endOfLineContaining(tokenText, "~|~");
-    if (altLoc < 0) {
-      erase(target, tokenText.length());
-    } else {
-      int endLoc = startOfLineContaining(tokenText, "~}");
-      checkState(endLoc >= altLoc);
-      erase(target, altLoc);
-      target.append(tokenText, altLoc, endLoc);
-      erase(target, tokenText.length() - endLoc);
+  private void printEditLog(EditLog editLog) {
+    var editsMap = map();
+    var editsMapSuccinct = map();
+    for (var edit : editLog.entries()) {
+      editsMap.put(edit.path(), edit.code() + "::" + editLog.content(edit));
+      editsMapSuccinct.put(edit.path(), edit.code().toString());
     }
+    pr("dry run; edits map:", INDENT, editsMap);
+    pr("succinct version:", INDENT, editsMapSuccinct);
   }
 
 }
-
@@ -0,0 +1,39 @@
+package dev.strip;
+
+import java.io.File;
+import java.util.List;
+
+import js.file.DirWalk;
+import js.file.Files;
+
+/**
+ * A SourceTree that reads the files from the filesystem
+ */
+class WorkingTreeSource implements SourceTree {
+
+  @Override
+  public boolean exists(File abs) {
+    return abs.exists();
+  }
+
+  @Override
+  public boolean isDirectory(File abs) {
+    return abs.isDirectory();
+  }
+
+  @Override
+  public boolean isSymLink(File abs) {
+    return !abs.getAbsoluteFile().equals(Files.getCanonicalFile(abs));
+  }
+
+  @Override
+  public List<File> filesWithinDir(File absDir) {
+    var walk = new DirWalk(absDir).withRecurse(false).includeDirectories();
+    return walk.files();
+  }
+
+  @Override
+  public String readString(File abs) {
+    return Files.readString(abs);
+  }
+}
@@ -0,0 +1,530 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2022 Jeff Sember
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+package dev;
+
+import static js.base.Tools.*;
+import static org.junit.Assert.*;
+
+import dev.archive.ChunkStore;
+import dev.archive.MultipartTransfer;
+import dev.archive.RegistrySnapshot;
+import dev.gen.archive.ArchiveEntry;
+import dev.gen.archive.ArchiveRegistry;
+import dev.gen.archive.LocalEntry;
+import dev.gen.archive.LocalRegistry;
+import dev.gen.archive.Oper;
+import dev.gen.archive.Transfer;
+import dev.gen.archive.TransferLog;
+import js.file.DirWalk;
+import js.file.Files;
+import js.json.JSMap;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ArchiveOperTest extends DevTestBase {
+
+  @Test
+  public void sameBasenamesRoundTrip() {
+    prepareProject();
+    addObject("data.csv", "a/data.csv", false);
+    addObject("data.json", "b/data.json", false);
+    addObject("data.txt", "d/data.txt", false);
+    addObject("data", "c/data", true);
+    writeFile("a/data.csv", "1,2,3\n");
+    writeFile("b/data.json", "{\"a\":1}\n");
+    writeFile("d/data.txt", "hello\n");
+    writeFile("c/data/x.txt", "x\n");
+    writeFile("c/data/sub/y.txt", "y\n");
+    var original = projectContents();
+
+    update("mock_latency", 20, "threads", 4);
+    forgetLocalCopies();
+    update("mock_latency", 20, "threads", 4);
+
+    assertEquals(original.toString(), projectContents().toString());
+  }
+
+  @Test
+  public void changeWithSameSizeAndTimeIsPushed() {
+    prepareProject();
+    addObject("data", "data", true);
+    writeFile("data/a.txt", "aaaa\n");
+    writeFile("data/b.txt", "bbbb\n");
+    update();
+
+    // Modify a file without changing its size or modification time
+    var file = new File(mProjectDir, "data/b.txt");
+    long modified = file.lastModified();
+    writeFile("data/b.txt", "BBBB\n");
+    file.setLastModified(modified);
+    var modifiedContents = projectContents();
+
+    run("push", "data");
+    update();
+    assertEquals(2, globalEntry("data").version());
+
+    forgetLocalCopies();
+    update();
+    assertEquals(modifiedContents.toString(), projectContents().toString());
+  }
+
+  @Test
+  public void chunksFollowingInsertionAreReused() {
+    prepareProject();
+    addObject("data", ArchiveEntry.newBuilder().path(new File("data")).directory(true).chunked(true));
+    var content = randomBytes(8 << 20);
+    writeBytes("data/big.bin", content);
+    update();
+    int initialChunks = remoteChunkCount();
+    assertTrue("chunks: " + initialChunks, initialChunks > 3);
+
+    // Insert some bytes near the start of the file, shifting all the content that follows
+    var modified = new byte[content.length + 100];
+    System.arraycopy(content, 0, modified, 0, 1000);
+    System.arraycopy(content, 1000, modified, 1100, content.length - 1000);
+    writeBytes("data/big.bin", modified);
+    run("push", "data");
+    update();
+
+    // Only the chunk containing the insertion should have changed
+    int newChunks = remoteChunkCount() - initialChunks;
+    assertTrue("new chunks: " + newChunks, newChunks >= 1 && newChunks <= 2);
+
+    forgetLocalCopies();
+    update();
+    assertArrayEquals(modified, readBytes("data/big.bin"));
+  }
+
+  @Test
+  public void incrementalPullMatchesFullPull() {
+    prepareProject();
+    addObject("data", "data", true);
+    writeFile("data/same.txt", "same\n");
+    writeFile("data/changed.txt", "old\n");
+    writeFile("data/removed.txt", "removed\n");
+    writeFile("data/sub/same.txt", "same too\n");
+    update();
+
+    // Make a clone of the project that holds the first version
+    var project = mProjectDir;
+    var clone = new File(generatedDir(), "clone");
+    files().copyDirectory(project, clone);
+
+    writeFile("data/changed.txt", "new content\n");
+    files().deleteFile(new File(project, "data/removed.txt"));
+    writeFile("data/sub/added.txt", "added\n");
+    var latest = projectContents();
+    run("push", "data");
+    update();
+    var registry = configFile("archive_registry.json");
+
+    // Bring the clone's registry up to date (as a git pull would), and patch its copy in place
+    mProjectDir = clone;
+    files().deleteFile(configFile("archive_registry.json"));
+    files().copyFile(registry, configFile("archive_registry.json"));
+    var unchanged = new File(clone, "data/sub/same.txt");
+    long oldTime = (System.currentTimeMillis() / 1000 - 3600) * 1000;
+    unchanged.setLastModified(oldTime);
+    update("incremental");
+    assertEquals(latest.toString(), projectContents().toString());
+    // Files that haven't changed shouldn't have been rewritten
+    assertEquals(oldTime, unchanged.lastModified());
+
+    // A full pull should yield the same files
+    mProjectDir = project;
+    forgetLocalCopies();
+    update();
+    assertEquals(latest.toString(), projectContents().toString());
+  }
+
+  @Test
+  public void multipartRoundTrip() {
+    prepareProject();
+    addObject("big", "big.bin", false);
+    var content = randomBytes((7 << 20) / 2);
+    writeBytes("big.bin", content);
+    update("part_size", 1, "part_threads", 3);
+    assertEquals(4, globalEntry("big").parts());
+    assertTrue(new File(mRemoteDir, MultipartTransfer.manifestName("big_001.bin")).exists());
+
+    forgetLocalCopies();
+    update("part_threads", 3);
+    assertArrayEquals(content, readBytes("big.bin"));
+  }
+
+  @Test
+  public void compressionLevelZeroStoresEntries() {
+    prepareProject();
+    addObject("stored", ArchiveEntry.newBuilder().path(new File("stored")).directory(true).compressionLevel(0));
+    addObject("deflated", "deflated", true);
+    for (var name : List.of("stored", "deflated")) {
+      writeFile(name + "/a.txt", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\n");
+      writeFile(name + "/sub/b.txt", "bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb\n");
+    }
+    var original = projectContents();
+    update("zip_threads", 1);
+    assertEquals(set(ZipEntry.STORED), zipMethods("stored_001.zip"));
+    assertEquals(set(ZipEntry.DEFLATED), zipMethods("deflated_001.zip"));
+
+    forgetLocalCopies();
+    update();
+    assertEquals(original.toString(), projectContents().toString());
+  }
+
+  @Test
+  public void cacheEvictsLeastRecentlyUsed() {
+    prepareProject();
+    var cacheDir = new File(generatedDir(), "cache");
+    // The cache can hold two of the objects, but not three
+    Object[] cacheArgs = { "cache_dir", cacheDir, "cache_limit", 2 };
+    for (var key : List.of("x", "y", "z")) {
+      addObject(key, key + ".bin", false);
+      writeBytes(key + ".bin", randomBytes(800 << 10, key.hashCode()));
+    }
+
+    // Pushing objects adds them to the cache
+    update(cacheArgs, "only", "x");
+    pause();
+    update(cacheArgs, "only", "y");
+    pause();
+
+    // Pull x into a clone of the project. It must come from the cache (since it is deleted from the
+    // remote), and it becomes the most recently used object
+    var registry = configFile("archive_registry.json");
+    var project = mProjectDir;
+    mProjectDir = files().mkdirs(new File(generatedDir(), "clone"));
+    files().mkdirs(configDirectory());
+    files().copyFile(registry, configFile("archive_registry.json"));
+    files().deleteFile(new File(mRemoteDir, "x_001.bin"));
+    update(cacheArgs, "only", "x");
+    assertArrayEquals(randomBytes(800 << 10, "x".hashCode()), readBytes("x.bin"));
+    pause();
+
+    // Pushing a third object should evict y, the least recently used
+    mProjectDir = project;
+    update(cacheArgs, "only", "z");
+    // Cached files are named <digest>_<name>
+    List<String> cached = arrayList();
+    for (var f : Files.files(cacheDir))
+      if (!f.getName().startsWith("_SKIP_"))
+        cached.add(f.getName().substring(f.getName().indexOf('_') + 1));
+    cached.sort(null);
+    assertEquals(List.of("x_001.bin", "z_001.bin"), cached);
+  }
+
+  @Test
+  public void lazyUpdateDefersPullsUntilFetched() {
+    prepareProject();
+    addObject("a", "a.txt", false);
+    addObject("b", "b.txt", false);
+    writeFile("a.txt", "aaa\n");
+    writeFile("b.txt", "bbb\n");
+    update();
+    var original = projectContents();
+
+    forgetLocalCopies();
+    update("lazy");
+    assertFalse(new File(mProjectDir, "a.txt").exists());
+    assertEquals(Oper.FETCH, localEntry("a").pending());
+    assertEquals(Oper.FETCH, localEntry("b").pending());
+
+    // Fetching an object should pull only that object
+    run("fetch", "a");
+    assertEquals("aaa\n", Files.readString(new File(mProjectDir, "a.txt")));
+    assertEquals(Oper.NONE, localEntry("a").pending());
+    assertFalse(new File(mProjectDir, "b.txt").exists());
+    assertEquals(Oper.FETCH, localEntry("b").pending());
+
+    // A subsequent update that isn't lazy pulls the remaining objects
+    update();
+    assertEquals(original.toString(), projectContents().toString());
+    assertEquals(Oper.NONE, localEntry("b").pending());
+  }
+
+  @Test
+  public void interruptedPushIsResumed() {
+    prepareProject();
+    addObject("data", "data.txt", false);
+    writeFile("data.txt", "one\n");
+    update();
+
+    // Simulate a push of a second version that was interrupted after the object was stored,
+    // but before the registries were updated
+    writeFile("data.txt", "two\n");
+    run("push", "data");
+    var file = new File(mProjectDir, "data.txt");
+    files().copyFile(file, new File(mRemoteDir, "data_002.txt"));
+    Map<String, Transfer> transfers = hashMap();
+    transfers.put("data", Transfer.newBuilder().push(true).version(2).name("data_002.txt")
+        .digest(Sha256.hashFile(file)).build());
+    files().writePretty(journalFile(), TransferLog.newBuilder().transfers(transfers).build());
+
+    update("listing_ttl", 0);
+    assertEquals(2, globalEntry("data").version());
+    assertFalse(journalFile().exists());
+
+    forgetLocalCopies();
+    update();
+    assertEquals("two\n", Files.readString(file));
+  }
+
+  @Test
+  public void versionPushedByAnotherClientIsNotAdopted() {
+    prepareProject();
+    addObject("data", "data.txt", false);
+    writeFile("data.txt", "one\n");
+    update();
+
+    // Another client has pushed a second version, which our registry doesn't know about
+    files().writeString(new File(mRemoteDir, "data_002.txt"), "theirs\n");
+    writeFile("data.txt", "mine\n");
+    run("push", "data");
+
+    // Every attempt to push our version should fail, and shouldn't leave a journal record that
+    // would let a later attempt mistake the other client's version for ours
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try {
+        update("listing_ttl", 0);
+        fail("push should have failed");
+      } catch (RuntimeException e) {
+        // expected
+      }
+      assertFalse(journalFile().exists());
+    }
+  }
+
+  // ------------------------------------------------------------------
+
+  @Test
+  public void changedRegistryInvalidatesSnapshot() {
+    prepareProject();
+    addObject("alpha", "a.txt", false);
+    File jsonFile = configFile("archive_registry.json");
+    File snapshotFile = configFile("archive_registry.snapshot");
+    long length = jsonFile.length();
+    long time = jsonFile.lastModified();
+    RegistrySnapshot.read(files(), ArchiveRegistry.DEFAULT_INSTANCE, jsonFile, snapshotFile);
+    assertTrue(snapshotFile.exists());
+
+    // Rename the entry, leaving the JSON file's size and modification time unchanged
+    mRegistry.entries().clear();
+    addObject("bravo", "a.txt", false);
+    jsonFile.setLastModified(time);
+    assertEquals(length, jsonFile.length());
+
+    ArchiveRegistry registry = RegistrySnapshot.read(files(), ArchiveRegistry.DEFAULT_INSTANCE, jsonFile,
+        snapshotFile);
+    assertEquals(1, registry.entries().size());
+    assertTrue(registry.entries().containsKey("bravo"));
+  }
+
+  private void prepareProject() {
+    mProjectDir = files().mkdirs(new File(generatedDir(), "project"));
+    mRemoteDir = files().mkdirs(new File(generatedDir(), "remote"));
+    files().mkdirs(configDirectory());
+    mRegistry = ArchiveRegistry.newBuilder();
+  }
+
+  private void addObject(String key, String path, boolean directory) {
+    addObject(key, ArchiveEntry.newBuilder().path(new File(path)).directory(directory));
+  }
+
+  private void addObject(String key, ArchiveEntry.Builder entry) {
+    mRegistry.entries().put(key, entry.build());
+    files().writePretty(configFile("archive_registry.json"), mRegistry.build());
+  }
+
+  private ArchiveEntry globalEntry(String key) {
+    return Files.parseAbstractData(ArchiveRegistry.DEFAULT_INSTANCE, configFile("archive_registry.json"))
+        .entries().get(key);
+  }
+
+  private LocalEntry localEntry(String key) {
+    return Files.parseAbstractData(LocalRegistry.DEFAULT_INSTANCE, configFile(".archive_registry.json"))
+        .entries().get(key);
+  }
+
+  private void writeFile(String path, String content) {
+    var file = new File(mProjectDir, path);
+    files().mkdirs(file.getParentFile());
+    files().writeString(file, content);
+  }
+
+  private void writeBytes(String path, byte[] content) {
+    var file = new File(mProjectDir, path);
+    files().mkdirs(file.getParentFile());
+    try {
+      java.nio.file.Files.write(file.toPath(), content);
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  private byte[] readBytes(String path) {
+    try {
+      return java.nio.file.Files.readAllBytes(new File(mProjectDir, path).toPath());
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  private static byte[] randomBytes(int length) {
+    return randomBytes(length, 1965);
+  }
+
+  private static byte[] randomBytes(int length, long seed) {
+    var bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Wait long enough that files modified afterward have later modification
+   * times than those modified before
+   */
+  private static void pause() {
+    try {
+      Thread.sleep(50);
+    } catch (InterruptedException e) {
+      throw asRuntimeException(e);
+    }
+  }
+
+  /**
+   * Get the compression methods used by the entries of a zip file within the
+   * remote
+   */
+  private Set<Integer> zipMethods(String name) {
+    Set<Integer> methods = new TreeSet<>();
+    try (var zip = new ZipFile(new File(mRemoteDir, name))) {
+      for (var entry : Collections.list(zip.entries()))
+        methods.add(entry.getMethod());
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+    return methods;
+  }
+
+  private static Set<Integer> set(Integer... values) {
+    return new TreeSet<>(List.of(values));
+  }
+
+  private int remoteChunkCount() {
+    int count = 0;
+    for (var f : Files.files(mRemoteDir))
+      if (f.getName().startsWith(ChunkStore.CHUNK_PREFIX))
+        count++;
+    return count;
+  }
+
+  private void update(Object... args) {
+    prepareArgs(args);
+    addArg("update");
+    runApp();
+  }
+
+  private void run(Object... args) {
+    prepareArgs(args);
+    runApp();
+  }
+
+  private void prepareArgs(Object... args) {
+    clearArgs();
+    setOper("archive");
+    addArg("dir", mProjectDir);
+    addArg("mock_remote", mRemoteDir);
+    addArg("backup_dir", new File(generatedDir(), "backups"));
+    for (var a : args) {
+      if (a instanceof Object[])
+        addArg((Object[]) a);
+      else
+        addArg(a);
+    }
+  }
+
+  /**
+   * Delete the local copies of the objects, the local registry, and any local
+   * chunks, so the next update pulls every object from the remote
+   */
+  private void forgetLocalCopies() {
+    for (var entry : mRegistry.entries().values()) {
+      var file = new File(mProjectDir, entry.path().toString());
+      if (file.isDirectory())
+        files().deleteDirectory(file);
+      else
+        files().deleteFile(file);
+    }
+    files().deleteFile(configFile(".archive_registry.json"));
+    var chunks = configFile(".archive_chunks");
+    if (chunks.exists())
+      files().deleteDirectory(chunks);
+  }
+
+  private File journalFile() {
+    return configFile(".archive_journal.json");
+  }
+
+  private File configDirectory() {
+    return new File(mProjectDir, files().projectConfigDirectory().getName());
+  }
+
+  private File configFile(String name) {
+    return new File(configDirectory(), name);
+  }
+
+  /**
+   * Get a map of the objects' files within the project directory to their
+   * contents
+   */
+  private JSMap projectContents() {
+    var m = map();
+    List<String> paths = arrayList();
+    for (var entry : mRegistry.entries().values()) {
+      var file = new File(mProjectDir, entry.path().toString());
+      if (file.isDirectory()) {
+        for (var f : new DirWalk(file).withRecurse(true).files())
+          paths.add(Files.relativeToContainingDirectory(f, mProjectDir).toString());
+      } else
+        paths.add(entry.path().toString());
+    }
+    paths.sort(null);
+    for (var path : paths)
+      m.put(path, Files.readString(new File(mProjectDir, path)));
+    return m;
+  }
+
+  private File mProjectDir;
+  private File mRemoteDir;
+  private ArchiveRegistry.Builder mRegistry;
+}
@@ -0,0 +1,99 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import dev.archive.ParallelZipper;
+import js.file.DirWalk;
+import js.file.Files;
+import js.webtools.FileArchiveDevice;
+
+/**
+ * Zips a synthetic directory and pushes it to a FileArchiveDevice, reporting
+ * throughput and peak heap usage. It must be run with a heap much smaller than
+ * the directory, to verify that memory stays flat regardless of object size
+ * (it fails otherwise), e.g.:
+ *
+ * <pre>
+ *   java -Xmx64m -cp ... dev.ArchiveZipBenchmark [gigabytes]
+ * </pre>
+ */
+public class ArchiveZipBenchmark {
+
+  public static void main(String[] args) {
+    var b = new Benchmark(args);
+    int gigabytes = b.intArg(0, 5);
+    long sourceBytes = ((long) gigabytes) << 30;
+    Runtime rt = Runtime.getRuntime();
+    checkState(sourceBytes >= 4 * rt.maxMemory(), "max heap", rt.maxMemory(),
+        "isn't much smaller than the source; run with e.g. -Xmx64m");
+    File sourceDir = new File(b.workDir(), "source");
+    File remoteDir = new File(b.workDir(), "remote");
+    Files.S.mkdirs(sourceDir);
+    Files.S.mkdirs(remoteDir);
+
+    // Use a few large files plus some small ones; the large files alternate between
+    // being deflated and (having an extension of compressed data) being stored
+    long remaining = sourceBytes;
+    int index = 0;
+    while (remaining > 0) {
+      long size = Math.min(remaining, 1L << 30);
+      String ext = (index % 2 == 0) ? "bin" : "jpg";
+      Benchmark.writeSyntheticFile(new File(sourceDir, String.format("large_%02d.%s", index++, ext)), size);
+      remaining -= size;
+    }
+    for (int i = 0; i < 100; i++)
+      Benchmark.writeSyntheticFile(new File(sourceDir, String.format("small_%03d.txt", i)), 10000);
+
+    List<File> relFiles = new DirWalk(sourceDir).filesRelative();
+    File zipFile = new File(b.workDir(), "object.zip");
+
+    b.startTimer();
+    new ParallelZipper(Files.S).zip(sourceDir, relFiles, zipFile);
+    long zipMs = b.lap();
+    verifyZip(zipFile, sourceDir, relFiles);
+    new FileArchiveDevice(remoteDir).push(zipFile, "object_001.zip");
+    long pushMs = b.lap();
+
+    pr("source bytes:", sourceBytes);
+    pr("zip ms:", zipMs);
+    pr("push ms:", pushMs);
+    pr("max heap:", rt.maxMemory(), "used:", rt.totalMemory() - rt.freeMemory());
+    b.done();
+  }
+
+  /**
+   * Verify that a zip file contains the expected entries, with the correct
+   * sizes and (by reading them) checksums
+   */
+  private static void verifyZip(File zipFile, File sourceDir, List<File> relFiles) {
+    byte[] buffer = new byte[1 << 16];
+    try (ZipFile zf = new ZipFile(zipFile)) {
+      checkState(zf.size() == relFiles.size(), "zip has", zf.size(), "entries; expected", relFiles.size());
+      for (File relFile : relFiles) {
+        ZipEntry entry = zf.getEntry(relFile.toString());
+        checkState(entry != null, "zip is missing:", relFile);
+        long length = 0;
+        CRC32 crc = new CRC32();
+        try (InputStream in = zf.getInputStream(entry)) {
+          int count;
+          while ((count = in.read(buffer)) > 0) {
+            length += count;
+            crc.update(buffer, 0, count);
+          }
+        }
+        checkState(length == new File(sourceDir, relFile.toString()).length(), "wrong length:", relFile);
+        checkState(crc.getValue() == entry.getCrc(), "wrong checksum:", relFile);
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+}
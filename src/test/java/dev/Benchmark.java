@@ -0,0 +1,110 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import js.file.Files;
+
+/**
+ * Support for the benchmarks (the classes named xxxBenchmark). These aren't
+ * unit tests; each has a main method, and is run from the command line:
+ *
+ * <pre>
+ *   java -cp ... dev.xxxBenchmark [arguments]
+ * </pre>
+ *
+ * A benchmark constructs a Benchmark from its arguments, then uses it to parse
+ * them, to time its sections of work, and to create (and finally delete) any
+ * files it needs
+ */
+public final class Benchmark {
+
+  public Benchmark(String[] args) {
+    loadTools();
+    mArgs = args;
+  }
+
+  public int argCount() {
+    return mArgs.length;
+  }
+
+  public String arg(int index) {
+    return mArgs[index];
+  }
+
+  /**
+   * Get an integer argument, or a default value if there are too few arguments
+   */
+  public int intArg(int index, int defaultValue) {
+    return (index < mArgs.length) ? Integer.parseInt(mArgs[index]) : defaultValue;
+  }
+
+  /**
+   * Get a temporary directory for the benchmark's files, constructing it if
+   * necessary; it is deleted by done()
+   */
+  public File workDir() {
+    if (mWorkDir == null)
+      mWorkDir = Files.createTempDir("benchmark_");
+    return mWorkDir;
+  }
+
+  /**
+   * Start timing a section of work
+   */
+  public void startTimer() {
+    mLapStartTime = System.currentTimeMillis();
+  }
+
+  /**
+   * Get the time elapsed since startTimer() or the previous call to lap(), in
+   * milliseconds (at least 1)
+   */
+  public long lap() {
+    long time = System.currentTimeMillis();
+    long elapsed = Math.max(1, time - mLapStartTime);
+    mLapStartTime = time;
+    return elapsed;
+  }
+
+  /**
+   * Delete the work directory, if one was constructed
+   */
+  public void done() {
+    if (mWorkDir != null)
+      Files.S.deleteDirectory(mWorkDir);
+    mWorkDir = null;
+  }
+
+  /**
+   * Write a file of synthetic data, which is somewhat compressible but not
+   * trivially so
+   */
+  public static void writeSyntheticFile(File file, long size) {
+    // Repeat a random block, with every fourth byte zeroed
+    byte[] block = new byte[1 << 20];
+    new Random(size).nextBytes(block);
+    for (int i = 0; i < block.length; i += 4)
+      block[i] = 0;
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      long written = 0;
+      while (written < size) {
+        int count = (int) Math.min(block.length, size - written);
+        out.write(block, 0, count);
+        written += count;
+      }
+    } catch (IOException e) {
+      throw Files.asFileException(e);
+    }
+  }
+
+  private final String[] mArgs;
+  private File mWorkDir;
+  private long mLapStartTime;
+}
@@ -0,0 +1,72 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import dev.strip.FilterState;
+
+/**
+ * Measures the time to descend through a synthetic directory tree with a large
+ * delete list, using FilterState (which shares its delete set with the states
+ * descended from it), compared with copying the delete set at each
+ * subdirectory:
+ *
+ * <pre>
+ *   java -cp ... dev.FilterStateBenchmark [directories [deletes]]
+ * </pre>
+ */
+public class FilterStateBenchmark {
+
+  public static void main(String[] args) {
+    var b = new Benchmark(args);
+    int dirCount = b.intArg(0, 50000);
+    int deleteCount = b.intArg(1, 1000);
+    int fanOut = 8;
+
+    var root = new File("/benchmark_project");
+    List<File> deletes = arrayList();
+    for (int i = 0; i < deleteCount; i++)
+      deletes.add(new File(root, "deleted_" + i));
+
+    // Copying the delete set for each subdirectory, as FilterState previously did
+    b.startTimer();
+    {
+      // Every directory's set has the same content, so copy the initial one (rather than
+      // retaining all of the copies, which the stack-based walk didn't do)
+      Set<File> initial = hashSet();
+      initial.addAll(deletes);
+      int found = 0;
+      for (int i = 0; i < dirCount; i++) {
+        Set<File> copy = hashSet();
+        copy.addAll(initial);
+        if (copy.contains(deletes.get(i % deleteCount)))
+          found++;
+      }
+      checkState(found == dirCount);
+    }
+    long copyMs = b.lap();
+
+    // Using FilterState
+    {
+      List<FilterState> queue = arrayList();
+      queue.add(new FilterState(root, deletes));
+      int found = 0;
+      for (int i = 0; i < dirCount; i++) {
+        var parent = queue.get(i / fanOut);
+        var state = parent.descendInto(new File(parent.directory(), "d" + (i % fanOut)));
+        queue.add(state);
+        if (state.deleteFilesAbs().contains(deletes.get(i % deleteCount)))
+          found++;
+      }
+      checkState(found == dirCount);
+    }
+    long sharedMs = b.lap();
+
+    pr("directories:", dirCount, "deletes:", deleteCount);
+    pr("copying ms:", copyMs);
+    pr("sharing ms:", sharedMs);
+  }
+}
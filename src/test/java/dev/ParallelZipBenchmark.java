@@ -0,0 +1,51 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.List;
+
+import dev.archive.ParallelZipper;
+import js.file.DirWalk;
+import js.file.Files;
+
+/**
+ * Compares the throughput of the ParallelZipper, using increasing numbers of
+ * threads (one thread compresses serially), on a synthetic directory:
+ *
+ * <pre>
+ *   java -cp ... dev.ParallelZipBenchmark [megabytes]
+ * </pre>
+ */
+public class ParallelZipBenchmark {
+
+  public static void main(String[] args) {
+    var b = new Benchmark(args);
+    int megabytes = b.intArg(0, 1024);
+    File sourceDir = new File(b.workDir(), "source");
+    Files.S.mkdirs(sourceDir);
+
+    long remaining = ((long) megabytes) << 20;
+    int index = 0;
+    while (remaining > 0) {
+      long size = Math.min(remaining, 256L << 20);
+      Benchmark.writeSyntheticFile(new File(sourceDir, String.format("large_%02d.bin", index++)), size);
+      remaining -= size;
+    }
+    for (int i = 0; i < 200; i++)
+      Benchmark.writeSyntheticFile(new File(sourceDir, String.format("small_%03d.txt", i)), 20000);
+
+    List<File> relFiles = new DirWalk(sourceDir).filesRelative();
+    File zipFile = new File(b.workDir(), "object.zip");
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= cores; threads *= 2) {
+      b.startTimer();
+      new ParallelZipper(Files.S).withThreads(threads).zip(sourceDir, relFiles, zipFile);
+      long ms = b.lap();
+      pr("parallel, threads: " + threads, "ms:", ms, "MB/s:", (megabytes * 1000L) / ms, "zip size:",
+          zipFile.length());
+    }
+    b.done();
+  }
+}
@@ -0,0 +1,63 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import dev.archive.RegistryIndex;
+import dev.gen.archive.ArchiveEntry;
+
+/**
+ * Compares finding keys by path using a linear scan of a registry's entries
+ * with using a RegistryIndex, for a synthetic registry:
+ *
+ * <pre>
+ *   java -cp ... dev.RegistryIndexBenchmark [entries]
+ * </pre>
+ */
+public class RegistryIndexBenchmark {
+
+  public static void main(String[] args) {
+    var b = new Benchmark(args);
+    int entryCount = b.intArg(0, 50000);
+    int lookupCount = 10000;
+
+    Map<String, ArchiveEntry> entries = hashMap();
+    for (int i = 0; i < entryCount; i++) {
+      File path = new File(String.format("data/group_%03d/object_%06d.bin", i % 500, i));
+      entries.put("object_" + i, ArchiveEntry.newBuilder().path(path).build());
+    }
+
+    Random r = new Random(1965);
+    List<File> queries = arrayList();
+    for (int i = 0; i < lookupCount; i++) {
+      int j = r.nextInt(entryCount);
+      queries.add(new File(String.format("data/group_%03d/object_%06d.bin", j % 500, j)));
+    }
+
+    b.startTimer();
+    int found = 0;
+    for (File path : queries) {
+      for (Map.Entry<String, ArchiveEntry> ent : entries.entrySet())
+        if (ent.getValue().path().equals(path))
+          found++;
+    }
+    long scanMs = b.lap();
+
+    RegistryIndex index = new RegistryIndex(entries);
+    long buildMs = b.lap();
+    int indexFound = 0;
+    for (File path : queries)
+      indexFound += index.keysForPath(path).size();
+    long lookupMs = b.lap();
+
+    checkState(found == indexFound, "scan found", found, "but index found", indexFound);
+    pr("entries:", entryCount, "lookups:", lookupCount);
+    pr("linear scan ms:", scanMs);
+    pr("index build ms:", buildMs);
+    pr("index lookup ms:", lookupMs);
+  }
+}
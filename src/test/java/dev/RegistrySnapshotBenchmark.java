@@ -0,0 +1,55 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.util.Map;
+
+import dev.archive.RegistrySnapshot;
+import dev.gen.archive.ArchiveEntry;
+import dev.gen.archive.ArchiveRegistry;
+import js.file.Files;
+
+/**
+ * Compares the time to load a registry from its JSON file with the time to
+ * load it from its binary snapshot, for various numbers of entries:
+ *
+ * <pre>
+ *   java -cp ... dev.RegistrySnapshotBenchmark
+ * </pre>
+ */
+public class RegistrySnapshotBenchmark {
+
+  public static void main(String[] args) {
+    var b = new Benchmark(args);
+    for (int entryCount = 1000; entryCount <= 100000; entryCount *= 10) {
+      File jsonFile = new File(b.workDir(), "archive_registry_" + entryCount + ".json");
+      File snapshotFile = new File(b.workDir(), "archive_registry_" + entryCount + ".snapshot");
+
+      Map<String, ArchiveEntry> entries = hashMap();
+      for (int i = 0; i < entryCount; i++) {
+        entries.put("object_" + i, ArchiveEntry.newBuilder() //
+            .version(1 + i % 7) //
+            .path(new File(String.format("data/group_%03d/object_%06d", i % 500, i))) //
+            .directory(i % 3 == 0) //
+            .digest(String.format("%064x", i)) //
+            .build());
+      }
+      ArchiveRegistry registry = ArchiveRegistry.newBuilder().entries(entries).build();
+      Files.S.writePretty(jsonFile, registry);
+      RegistrySnapshot.write(Files.S, registry, jsonFile, snapshotFile);
+
+      b.startTimer();
+      ArchiveRegistry fromJson = Files.parseAbstractData(ArchiveRegistry.DEFAULT_INSTANCE, jsonFile);
+      long jsonMs = b.lap();
+      ArchiveRegistry fromSnapshot = RegistrySnapshot.read(Files.S, ArchiveRegistry.DEFAULT_INSTANCE, jsonFile,
+          snapshotFile);
+      long snapshotMs = b.lap();
+
+      checkState(fromJson.equals(fromSnapshot), "registries differ");
+      pr("entries:", entryCount, "json bytes:", jsonFile.length(), "snapshot bytes:", snapshotFile.length());
+      pr("  json load ms:", jsonMs, "snapshot load ms:", snapshotMs);
+    }
+    b.done();
+  }
+}
@@ -0,0 +1,75 @@
+package dev;
+
+import static org.junit.Assert.*;
+
+import dev.strip.LiteralPrefilter;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests the required literals determined for token definitions (which are
+ * exposed through LiteralPrefilter)
+ */
+public class RequiredLiteralsTest extends DevTestBase {
+
+  @Test
+  public void alternation() {
+    assertLiterals("A: abc | xyz", "abc", "xyz");
+  }
+
+  @Test
+  public void optional() {
+    assertLiterals("A: ab?c", "abc", "ac");
+  }
+
+  @Test
+  public void oneOrMore() {
+    assertLiterals("A: x(ab)+y", "ab");
+  }
+
+  @Test
+  public void differenceIgnoresRightSide() {
+    assertLiterals("A: (abc|abd) -- abd", "abc", "abd");
+  }
+
+  @Test
+  public void nameReference() {
+    assertLiterals("_KW: foo\nA: $_KW bar", "foobar");
+  }
+
+  @Test
+  public void commentsAndContinuations() {
+    assertLiterals("# comment\n\nA: ab\\\n cd", "abcd");
+  }
+
+  @Test
+  public void unsupportedSyntax() {
+    assertNoLiterals("A: a{2}");
+  }
+
+  @Test
+  public void undefinedReference() {
+    assertNoLiterals("A: $missing");
+  }
+
+  @Test
+  public void recursiveReference() {
+    assertNoLiterals("_X: $_X a\nA: $_X");
+  }
+
+  @Test
+  public void tokenMatchingAnything() {
+    assertNoLiterals("A: ab\nB: .*");
+  }
+
+  private static void assertLiterals(String rxp, String... expected) {
+    var prefilter = LiteralPrefilter.forTokenDefinitions(rxp);
+    assertNotNull(prefilter);
+    assertEquals(List.of(expected), prefilter.literals());
+  }
+
+  private static void assertNoLiterals(String rxp) {
+    assertNull(LiteralPrefilter.forTokenDefinitions(rxp));
+  }
+}
@@ -0,0 +1,182 @@
+package dev;
+
+import static js.base.Tools.*;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import dev.strip.StripFilter;
+import js.file.Files;
+import js.parsing.DFA;
+import js.parsing.DFACache;
+import js.parsing.Lexer;
+
+/**
+ * Compares the throughput and allocation of the single-pass StripFilter with
+ * the previous implementation (which marked erased text with a special
+ * character, then removed it in a second pass), and verifies that their output
+ * is identical:
+ *
+ * <pre>
+ *   java -cp ... dev.StripFilterBenchmark [rxp_file source_file...]
+ * </pre>
+ *
+ * By default, uses the token definitions and Rust source from the StripOper
+ * unit test data, with the source repeated to make it larger
+ */
+public class StripFilterBenchmark {
+
+  public static void main(String[] args) {
+    var b = new Benchmark(args);
+    File rxpFile;
+    List<String> sources = arrayList();
+    if (b.argCount() >= 2) {
+      rxpFile = new File(b.arg(0));
+      for (int i = 1; i < b.argCount(); i++)
+        sources.add(Files.readString(new File(b.arg(i))));
+    } else {
+      var dataDir = new File("unit_test/strip_oper_test_data");
+      rxpFile = new File(dataDir, "sample_tokens.rxp");
+      var source = Files.readString(new File(dataDir, "sample_source.rs"));
+      sources.add(source.repeat(Math.max(1, (4 << 20) / source.length())));
+    }
+    var dfa = DFACache.SHARED_INSTANCE.forTokenDefinitions(Files.readString(rxpFile));
+
+    long totalChars = 0;
+    for (var s : sources)
+      totalChars += s.length();
+
+    var filter = new StripFilter(dfa);
+    for (var s : sources)
+      checkState(String.valueOf(twoPassFilter(s, dfa)).equals(String.valueOf(filter.apply(s))),
+          "filters produced different output");
+
+    int repetitions = 5;
+    for (int pass = 0; pass < 2; pass++) {
+      // The first pass warms up the JIT
+      boolean report = pass == 1;
+      measure("two pass", report, totalChars, repetitions, () -> {
+        for (var s : sources)
+          twoPassFilter(s, dfa);
+      });
+      measure("single pass", report, totalChars, repetitions, () -> {
+        for (var s : sources)
+          filter.apply(s);
+      });
+    }
+  }
+
+  private static void measure(String name, boolean report, long totalChars, int repetitions, Runnable r) {
+    var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+    long startTime = System.nanoTime();
+    for (int i = 0; i < repetitions; i++)
+      r.run();
+    long elapsed = System.nanoTime() - startTime;
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+    if (!report)
+      return;
+    double mb = totalChars * (double) repetitions / (1 << 20);
+    pr(String.format("%-12s %8.1f MB/s   %8.1f bytes allocated per char", name, mb / (elapsed / 1e9),
+        allocated / (totalChars * (double) repetitions)));
+  }
+
+  // ------------------------------------------------------------------
+  // The previous implementation, for comparison
+  // ------------------------------------------------------------------
+
+  private static final char ERASE_CHAR = 0x7f;
+
+  private static String twoPassFilter(String currText, DFA dfa) {
+    var filteredText = new StringBuilder();
+    int matchesWithinFile = 0;
+    var s = new Lexer(dfa).withText(currText).withNoSkip().withAcceptUnknownTokens();
+    while (s.hasNext()) {
+      var tk = s.read();
+      var tkText = tk.text();
+      if (tk.isUnknown()) {
+        filteredText.append(tkText);
+      } else {
+        matchesWithinFile++;
+        var tokenName = dfa.tokenName(tk.id());
+        if (tokenName.startsWith("ALTERNATIVE")) {
+          procExcludeToken(tkText, filteredText);
+        } else {
+          erase(filteredText, tkText.length());
+        }
+      }
+    }
+    if (matchesWithinFile == 0)
+      return null;
+    return pass2(filteredText);
+  }
+
+  private static void erase(StringBuilder target, int len) {
+    target.append(String.valueOf(ERASE_CHAR).repeat(len));
+  }
+
+  private static String pass2(StringBuilder s) {
+    addLF(s);
+    var out = new StringBuilder();
+    var lineContainedChars = false;
+    int bufferedSpaceCount = 0;
+    var eraseFound = false;
+    int i = 0;
+    while (i < s.length()) {
+      var c = s.charAt(i++);
+      if (c == '\n') {
+        if (lineContainedChars || !eraseFound) {
+          out.append('\n');
+        }
+        lineContainedChars = false;
+        bufferedSpaceCount = 0;
+        eraseFound = false;
+      } else if (c <= ' ') {
+        bufferedSpaceCount++;
+      } else if (c == ERASE_CHAR) {
+        eraseFound = true;
+      } else {
+        lineContainedChars = true;
+        out.append(spaces(bufferedSpaceCount));
+        bufferedSpaceCount = 0;
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+
+  private static void procExcludeToken(String tokenText, StringBuilder target) {
+    int altLoc = endOfLineContaining(tokenText, "~|~");
+    if (altLoc < 0) {
+      erase(target, tokenText.length());
+    } else {
+      int endLoc = startOfLineContaining(tokenText, "~}");
+      checkState(endLoc >= altLoc);
+      erase(target, altLoc);
+      target.append(tokenText, altLoc, endLoc);
+      erase(target, tokenText.length() - endLoc);
+    }
+  }
+
+  private static int startOfLineContaining(String text, String pattern) {
+    var i = text.indexOf(pattern);
+    if (i >= 0) {
+      i += pattern.length();
+      while (i > 0 && text.charAt(i - 1) != '\n')
+        i--;
+    }
+    return i;
+  }
+
+  private static int endOfLineContaining(String text, String pattern) {
+    var i = text.indexOf(pattern);
+    if (i >= 0) {
+      i += pattern.length();
+      while (i < text.length() && text.charAt(i - 1) != '\n')
+        i++;
+    }
+    return i;
+  }
+}
@@ -24,17 +24,23 @@
 package dev;
 
 import static js.base.Tools.*;
+import static org.junit.Assert.*;
 
 import dev.strip.StripOper;
 import js.file.DirWalk;
 import js.file.Files;
+import js.json.JSMap;
 import js.parsing.DFA;
 import js.parsing.DFACache;
 import js.parsing.Lexer;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
 
 public class StripOperTest extends DevTestBase {
 
@@ -42,8 +48,7 @@ public class StripOperTest extends DevTestBase {
   public void strip() {
     rv();
     prepareApp();
-    runApp();
-    assertGenerated();
+    runAndAssertGenerated();
   }
 
   @Test
@@ -62,8 +67,7 @@ public class StripOperTest extends DevTestBase {
         }
       }
     }
-    runApp();
-    assertGenerated();
+    runAndAssertGenerated();
   }
 
   @Test
@@ -100,16 +104,14 @@ public class StripOperTest extends DevTestBase {
     var fl = "big.rs\n" + "subdir/h2\n";
     var targ = Files.join(mProjectDirSource, ".files");
     files().writeString(targ, fl);
-    runApp();
-    assertGenerated();
+    runAndAssertGenerated();
   }
 
   @Test
   public void filterDryRun() {
     prepareApp();
     addArg("--dryrun");
-    runApp();
-    assertGenerated();
+    runAndAssertGenerated();
   }
 
   @Test
@@ -117,8 +119,7 @@ public class StripOperTest extends DevTestBase {
     prepareApp();
     files().writeString(new File(sourceDir(), StripOper.EXPLICIT_FILES_LIST), "subdir");
     files().writeString(new File(sourceDir(), "subdir/" + StripOper.EXPLICIT_FILES_LIST), "c.java\nh2");
-    runApp();
-    assertGenerated();
+    runAndAssertGenerated();
   }
 
   @Test
@@ -131,11 +132,129 @@ public class StripOperTest extends DevTestBase {
     auxFilt("", "d.java", "subdir/j2");
   }
 
+  @Test
+  public void parallelMatchesSerial() {
+    // The cache is disabled, so that each strip examines every file itself
+    var serial = stripProject("threads", 1, "no_cache");
+    assertEquals(1, StripOper.lastStats().opt("workers", 0));
+    var parallel = stripProject("threads", 4, "no_cache");
+    assertTrue(StripOper.lastStats().opt("workers", 0) > 1);
+    assertEquals(serial.toString(), parallel.toString());
+  }
+
+  @Test
+  public void spilledEditsMatchInMemory() {
+    var inMemory = stripProject("no_cache");
+    assertEquals(0, StripOper.lastStats().opt("edits_spilled", -1));
+
+    // With no memory budget, the content of every modified file is spilled to disk
+    assertEquals(inMemory.toString(), stripProject("no_cache", "edits_memory_mb", 0).toString());
+    assertTrue(StripOper.lastStats().opt("edits_spilled", 0) > 0);
+  }
+
+  @Test
+  public void cachedMatchesUncached() {
+    var uncached = stripProject("no_cache");
+
+    // The first pass populates the cache, and the second uses it
+    assertEquals(uncached.toString(), stripProject().toString());
+    var stats = StripOper.lastStats();
+    assertEquals(0, stats.opt("cache_hits", -1));
+    assertTrue(stats.opt("cache_misses", 0) > 0);
+    assertTrue(new File(cacheDir(), ".strip_cache/xxx/filter_results").isDirectory());
+
+    assertEquals(uncached.toString(), stripProject().toString());
+    stats = StripOper.lastStats();
+    assertTrue(stats.opt("cache_hits", 0) > 0);
+    assertEquals(0, stats.opt("cache_misses", -1));
+  }
+
+  @Test
+  public void prefilteredMatchesUnfiltered() {
+    var unfiltered = stripProject("no_cache", "no_prefilter");
+    var stats = StripOper.lastStats();
+    assertEquals(0, stats.opt("prefilter_skipped", -1));
+    assertEquals(0, stats.opt("prefilter_lexed", -1));
+
+    // Some of the project's source files contain none of the required literals
+    assertEquals(unfiltered.toString(), stripProject("no_cache").toString());
+    stats = StripOper.lastStats();
+    assertTrue(stats.opt("prefilter_skipped", 0) > 0);
+    assertTrue(stats.opt("prefilter_lexed", 0) > 0);
+  }
+
+  @Test
+  public void watchAppliesChanges() {
+    prepareApp();
+    var targetDir = files().mkdirs(new File(generatedDir(), "watch_target"));
+    // A file whose source was deleted while the watcher wasn't running
+    files().mkdirs(new File(targetDir, "subdir"));
+    files().writeString(new File(targetDir, "subdir/orphan.txt"), "orphan\n");
+    files().mkdirs(new File(targetDir, ".git"));
+    files().writeString(new File(targetDir, ".git/HEAD"), "ref: refs/heads/main\n");
+
+    // Once the project has been stripped, create one file and delete another
+    var newFile = new File(mProjectDirSource, "new_file.txt");
+    var deletedFile = new File(mProjectDirSource, "rust_2.rs");
+    var steps = new ArrayDeque<Supplier<Set<File>>>();
+    steps.add(() -> {
+      assertTrue(new File(targetDir, "rust_2.rs").exists());
+      files().writeString(newFile, "hello\n");
+      files().deleteFile(deletedFile);
+      return new TreeSet<>(List.of(newFile, deletedFile));
+    });
+
+    addArg("watch", "target_dir", targetDir);
+    StripOper.sTestChanges = () -> steps.isEmpty() ? null : steps.remove().get();
+    try {
+      runApp();
+    } finally {
+      StripOper.sTestChanges = null;
+    }
+    assertTrue(steps.isEmpty());
+
+    assertFalse(new File(targetDir, "subdir/orphan.txt").exists());
+    assertTrue(new File(targetDir, ".git/HEAD").exists());
+    assertTrue(new File(targetDir, "subdir/java_1.java").exists());
+    assertEquals("hello\n", Files.readString(new File(targetDir, "new_file.txt")));
+    assertFalse(new File(targetDir, "rust_2.rs").exists());
+  }
+
+  /**
+   * Strip a fresh copy of the test project, with some additional arguments
+   *
+   * @return the contents of the target directory
+   */
+  private JSMap stripProject(Object... args) {
+    if (mProjectDirSource != null) {
+      files().deleteDirectory(mProjectDirSource);
+      files().deleteDirectory(mProjectDirTarget);
+    }
+    prepareApp();
+    addArg(args);
+    runApp();
+    return targetContents();
+  }
+
+  /**
+   * Get a map of the files within the target directory to their contents
+   */
+  private JSMap targetContents() {
+    var m = map();
+    var dw = new DirWalk(mProjectDirTarget).withRecurse(true);
+    List<String> paths = arrayList();
+    for (var f : dw.files())
+      paths.add(Files.relativeToContainingDirectory(f, mProjectDirTarget).toString());
+    paths.sort(null);
+    for (var path : paths)
+      m.put(path, Files.readString(new File(mProjectDirTarget, path)));
+    return m;
+  }
+
   private void auxFilt(String relPath, String... concatExprs) {
     repFilter(relPath, concatExprs);
     prepareApp();
-    runApp();
-    assertGenerated();
+    runAndAssertGenerated();
   }
 
   private void repFilter(String relPath, String... concatExprs) {
@@ -178,6 +297,17 @@ public class StripOperTest extends DevTestBase {
     addArg("skip_pattern_search");
   }
 
+  /**
+   * Run the app, and verify that the generated directory has the expected
+   * contents
+   */
+  private void runAndAssertGenerated() {
+    // The filter cache is stored within the generated directory, which would affect its hash
+    addArg("no_cache");
+    runApp();
+    assertGenerated();
+  }
+
 
   private File sourceDir() {
     return new File(generatedDir(), "project");
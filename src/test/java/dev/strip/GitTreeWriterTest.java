@@ -0,0 +1,121 @@
+package dev.strip;
+
+import static js.base.Tools.*;
+import static org.junit.Assert.*;
+
+import dev.gen.EditCode;
+import js.file.Files;
+import js.testutil.MyTestCase;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests GitTreeSource and GitTreeWriter against a scratch git repository
+ */
+public class GitTreeWriterTest extends MyTestCase {
+
+  @Test
+  public void commitEditsToBranch() {
+    mRepoDir = Files.createTempDir("git_tree_writer_test_");
+    try {
+      git("init", "-q");
+      git("config", "user.name", "test");
+      git("config", "user.email", "test@example.com");
+      git("config", "commit.gpgsign", "false");
+
+      git("checkout", "-q", "-b", "target");
+      writeFile("keep.txt", "keep\n");
+      writeFile("run.sh", "echo old\n");
+      writeFile("gone.txt", "gone\n");
+      writeFile("olddir/a.txt", "a\n");
+      writeFile("x", "x is a file\n");
+      commitAll("target");
+      var targetCommit = git("rev-parse", "HEAD");
+
+      git("checkout", "-q", "--orphan", "source");
+      git("rm", "-r", "-q", "-f", ".");
+      writeFile("keep.txt", "keep\n");
+      writeFile("run.sh", "echo new\n");
+      new File(mRepoDir, "run.sh").setExecutable(true);
+      writeFile("x/y.txt", "y\n");
+      commitAll("source");
+      var sourceCommit = git("rev-parse", "HEAD");
+
+      var source = new GitTreeSource(mRepoDir, sourceCommit);
+      var editLog = new EditLog(1 << 20);
+      try {
+        assertTrue(source.isDirectory(new File(mRepoDir, "x")));
+        assertEquals("echo new\n", source.readString(new File(mRepoDir, "run.sh")));
+        assertEquals("100755", source.mode("run.sh"));
+
+        addEdit(editLog, "gone.txt", EditCode.DELETE, "");
+        addEdit(editLog, "olddir", EditCode.DELETE, "");
+        addEdit(editLog, "run.sh", EditCode.MODIFY, source.readString(new File(mRepoDir, "run.sh")));
+        addEdit(editLog, "x/y.txt", EditCode.MODIFY, source.readString(new File(mRepoDir, "x/y.txt")));
+
+        var commit = new GitTreeWriter(mRepoDir, source).commit("target", editLog, "Strip");
+        assertNotNull(commit);
+        assertEquals(commit, git("rev-parse", "refs/heads/target"));
+        assertEquals(targetCommit, git("rev-parse", commit + "^"));
+
+        // The deleted file and directory are gone, the modified file has the source's mode, and
+        // the file 'x' has been replaced by a directory
+        assertEquals(String.join("\n", //
+            "100644 blob keep.txt", //
+            "100755 blob run.sh", //
+            "100644 blob x/y.txt"), treeListing("target"));
+        assertEquals("echo new", git("show", "target:run.sh"));
+        assertEquals("y", git("show", "target:x/y.txt"));
+
+        // Applying the same edits again changes nothing
+        assertNull(new GitTreeWriter(mRepoDir, source).commit("target", editLog, "Strip"));
+        assertEquals(commit, git("rev-parse", "refs/heads/target"));
+
+        // Neither the working tree nor the repository's index was touched
+        assertEquals("source", git("rev-parse", "--abbrev-ref", "HEAD"));
+        assertEquals("", git("status", "--porcelain"));
+      } finally {
+        source.close();
+        editLog.close();
+      }
+    } finally {
+      Files.S.deleteDirectory(mRepoDir);
+    }
+  }
+
+  private String git(String... args) {
+    return GitCommand.line(mRepoDir, args);
+  }
+
+  private void writeFile(String path, String content) {
+    var f = new File(mRepoDir, path);
+    Files.S.mkdirs(f.getParentFile());
+    Files.S.writeString(f, content);
+  }
+
+  private void commitAll(String message) {
+    git("add", "-A");
+    git("commit", "-q", "-m", message);
+  }
+
+  private static void addEdit(EditLog editLog, String path, EditCode code, String content) {
+    editLog.add(editLog.newEntry(new File(path), code, content));
+  }
+
+  /**
+   * Get the mode, type, and path of each file within a branch's tree
+   */
+  private String treeListing(String branch) {
+    List<String> lines = arrayList();
+    for (var line : split(git("ls-tree", "-r", "--full-tree", branch), '\n')) {
+      // <mode> SP <type> SP <object> TAB <path>
+      var fields = split(line.substring(0, line.indexOf('\t')), ' ');
+      lines.add(fields.get(0) + " " + fields.get(1) + " " + line.substring(line.indexOf('\t') + 1));
+    }
+    return String.join("\n", lines);
+  }
+
+  private File mRepoDir;
+}